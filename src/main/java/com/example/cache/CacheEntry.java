@@ -0,0 +1,37 @@
+package com.example.cache;
+
+/**
+ * 缓存条目
+ * 在缓存值之外记录写入时间和加载耗时，用于判断软过期和提前刷新（XFetch）
+ */
+public class CacheEntry {
+
+    private Object value;
+
+    // 写入时间（毫秒时间戳），0表示未知（旧格式数据），不参与提前刷新
+    private long writtenAt;
+
+    // 生成该值的加载耗时（毫秒），加载越慢越早开始刷新
+    private long loadMillis;
+
+    public CacheEntry() {
+    }
+
+    public CacheEntry(Object value, long writtenAt, long loadMillis) {
+        this.value = value;
+        this.writtenAt = writtenAt;
+        this.loadMillis = loadMillis;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    public long getWrittenAt() {
+        return writtenAt;
+    }
+
+    public long getLoadMillis() {
+        return loadMillis;
+    }
+}
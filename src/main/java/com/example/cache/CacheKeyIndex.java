@@ -0,0 +1,140 @@
+package com.example.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 缓存key索引
+ * 每个缓存对应一个有序集合 cache-index:{缓存名}，成员为缓存key、分数为Redis中的过期时间，
+ * 在写入和清除缓存时增量维护。统计条目数只需 ZCOUNT 未过期的部分，不再扫描整个Redis；
+ * 已过期的成员在下次写入同一缓存时顺带清理
+ */
+public class CacheKeyIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheKeyIndex.class);
+
+    private static final String INDEX_PREFIX = "cache-index:";
+
+    // 先清理已过期的成员再登记，两步在一次往返中完成
+    private static final DefaultRedisScript<Long> ADD_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', ARGV[1]) " +
+            "return redis.call('ZADD', KEYS[1], ARGV[2], ARGV[3])", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    // 缓存名 -> Redis中的过期时间（毫秒），0表示不过期
+    private final Map<String, Long> ttlMillis = new ConcurrentHashMap<>();
+
+    public CacheKeyIndex(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * 登记缓存在Redis中的过期时间，创建缓存时调用
+     */
+    public void register(String cacheName, Duration ttl) {
+        ttlMillis.put(cacheName, ttl != null ? ttl.toMillis() : 0L);
+    }
+
+    public void add(String cacheName, String key) {
+        long now = System.currentTimeMillis();
+        long ttl = ttlMillis.getOrDefault(cacheName, 0L);
+        String expireAt = ttl > 0 ? String.valueOf(now + ttl) : "+inf";
+        try {
+            stringRedisTemplate.execute(ADD_SCRIPT, Collections.singletonList(indexKey(cacheName)),
+                    String.valueOf(now), expireAt, key);
+        } catch (Exception e) {
+            // 索引只用于统计，失败不影响缓存本身
+            logger.warn("更新缓存索引失败: {}::{} - {}", cacheName, key, e.getMessage());
+        }
+    }
+
+    /**
+     * 批量登记，预热时使用，一次ZADD完成
+     */
+    public void addAll(String cacheName, Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long ttl = ttlMillis.getOrDefault(cacheName, 0L);
+        double expireAt = ttl > 0 ? now + ttl : Double.POSITIVE_INFINITY;
+        Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>();
+        for (String key : keys) {
+            tuples.add(ZSetOperations.TypedTuple.of(key, expireAt));
+        }
+        try {
+            stringRedisTemplate.opsForZSet().removeRangeByScore(indexKey(cacheName), Double.NEGATIVE_INFINITY, now);
+            stringRedisTemplate.opsForZSet().add(indexKey(cacheName), tuples);
+        } catch (Exception e) {
+            logger.warn("批量更新缓存索引失败: {} - {}", cacheName, e.getMessage());
+        }
+    }
+
+    public void remove(String cacheName, String key) {
+        try {
+            stringRedisTemplate.opsForZSet().remove(indexKey(cacheName), key);
+        } catch (Exception e) {
+            logger.warn("更新缓存索引失败: {}::{} - {}", cacheName, key, e.getMessage());
+        }
+    }
+
+    public void removeAll(String cacheName, Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        try {
+            stringRedisTemplate.opsForZSet().remove(indexKey(cacheName), keys.toArray());
+        } catch (Exception e) {
+            logger.warn("批量更新缓存索引失败: {} - {}", cacheName, e.getMessage());
+        }
+    }
+
+    public void clear(String cacheName) {
+        try {
+            stringRedisTemplate.delete(indexKey(cacheName));
+        } catch (Exception e) {
+            logger.warn("清除缓存索引失败: {} - {}", cacheName, e.getMessage());
+        }
+    }
+
+    /**
+     * 各缓存当前未过期的条目数，一次pipeline完成
+     */
+    public Map<String, Long> counts(List<String> cacheNames) {
+        double now = System.currentTimeMillis();
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String cacheName : cacheNames) {
+                connection.zSetCommands().zCount(indexKey(cacheName).getBytes(StandardCharsets.UTF_8),
+                        now, Double.POSITIVE_INFINITY);
+            }
+            return null;
+        });
+
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int i = 0; i < cacheNames.size(); i++) {
+            Object count = i < results.size() ? results.get(i) : null;
+            counts.put(cacheNames.get(i), count instanceof Long ? (Long) count : 0L);
+        }
+        return counts;
+    }
+
+    private static String indexKey(String cacheName) {
+        return INDEX_PREFIX + cacheName;
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.data.redis.serializer.RedisElementWriter;
+import org.springframework.data.redis.serializer.RedisSerializationContext.SerializationPair;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存监控指标（通过actuator的metrics端点暴露）
+ *
+ * L1使用Caffeine自带的统计（cache.gets/cache.puts/cache.evictions，cache.manager=local），
+ * L2由RedisCacheManager开启统计后Spring Boot自动注册同名指标（cache.manager=redis）；
+ * 这里额外记录两级合并后的命中层级、加载耗时和写入Redis的值大小
+ */
+public class CacheMetrics {
+
+    public static final String LEVEL_L1 = "l1";
+    public static final String LEVEL_L2 = "l2";
+    public static final String LEVEL_MISS = "miss";
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Counter> lookups = new ConcurrentHashMap<>();
+    private final Map<String, Timer> loads = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> payloads = new ConcurrentHashMap<>();
+
+    public CacheMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 注册L1的Caffeine统计，本地缓存需开启recordStats
+     */
+    public void bindLocal(String cacheName, com.github.benmanes.caffeine.cache.Cache<String, Object> local) {
+        CaffeineCacheMetrics.monitor(meterRegistry, local, cacheName, "cache.manager", "local");
+    }
+
+    /**
+     * 记录一次读取在哪一级命中
+     *
+     * @param level LEVEL_L1、LEVEL_L2或LEVEL_MISS
+     */
+    public void recordLookup(String cacheName, String level) {
+        lookups.computeIfAbsent(cacheName + ":" + level, k -> Counter.builder("cache.twolevel.gets")
+                .description("两级缓存读取按命中层级计数")
+                .tag("cache", cacheName)
+                .tag("level", level)
+                .register(meterRegistry))
+                .increment();
+    }
+
+    /**
+     * 记录一次回源加载的耗时（含后台刷新）
+     */
+    public void recordLoad(String cacheName, long nanos) {
+        loads.computeIfAbsent(cacheName, k -> Timer.builder("cache.twolevel.load")
+                .description("缓存未命中或刷新时回源加载的耗时")
+                .tag("cache", cacheName)
+                .publishPercentileHistogram()
+                .register(meterRegistry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 包装缓存的值序列化，记录每次写入Redis的字节数
+     */
+    public SerializationPair<Object> meterPayloads(String cacheName, SerializationPair<Object> pair) {
+        DistributionSummary summary = payloads.computeIfAbsent(cacheName, k -> DistributionSummary
+                .builder("cache.payload.size")
+                .description("写入Redis的缓存值大小")
+                .baseUnit("bytes")
+                .tag("cache", cacheName)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+        RedisElementWriter<Object> writer = value -> {
+            ByteBuffer buffer = pair.write(value);
+            summary.record(buffer.remaining());
+            return buffer;
+        };
+        return SerializationPair.just(pair.getReader(), writer);
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 缓存标签索引
+ * 写入缓存时按注册的解析函数从值中提取标签（如条目中包含的用户ID），
+ * 在 cache-tag:{标签} 集合中登记 "缓存名|key"；失效时取出标签下的所有条目批量清除，
+ * 不必等待过期或清空整个缓存。
+ *
+ * 同一标签可能被过期时间不同的多个缓存共用（如 user-ref:{id}），标签集合的过期时间只延长不缩短，
+ * 始终不早于其中最晚过期的条目；集合中残留的已过期条目在失效时清除一次不存在的key，无副作用
+ */
+public class CacheTagIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheTagIndex.class);
+
+    private static final String TAG_PREFIX = "cache-tag:";
+    private static final String SEPARATOR = "|";
+
+    // 取出所有标签下的条目并删除标签集合，保证同一批条目只被处理一次
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> TAKE_SCRIPT = new DefaultRedisScript<>(
+            "local members = redis.call('SUNION', unpack(KEYS)) " +
+            "redis.call('DEL', unpack(KEYS)) " +
+            "return members", List.class);
+
+    // 登记条目后把标签集合的过期时间延长到ARGV[1]毫秒，剩余时间更长时保持不变（新建的集合PTTL为-1）
+    private static final byte[] TAG_SCRIPT = (
+            "redis.call('SADD', KEYS[1], unpack(ARGV, 2)) " +
+            "local ttl = tonumber(ARGV[1]) " +
+            "if ttl > 0 and redis.call('PTTL', KEYS[1]) < ttl then " +
+            "  redis.call('PEXPIRE', KEYS[1], ttl) " +
+            "end " +
+            "return 1").getBytes(StandardCharsets.UTF_8);
+
+    // 单次脚本调用登记的最大成员数，避免unpack超出Lua栈限制
+    private static final int MEMBERS_PER_CALL = 1000;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    // 缓存名 -> 从缓存值中提取标签的函数，未注册的缓存不打标签
+    private final Map<String, Function<Object, Collection<String>>> resolvers = new ConcurrentHashMap<>();
+
+    // 缓存名 -> Redis中的过期时间（毫秒）
+    private final Map<String, Long> ttlMillis = new ConcurrentHashMap<>();
+
+    public CacheTagIndex(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * 为缓存注册标签解析函数
+     */
+    public void registerResolver(String cacheName, Function<Object, Collection<String>> resolver) {
+        resolvers.put(cacheName, resolver);
+    }
+
+    /**
+     * 登记缓存在Redis中的过期时间，创建缓存时调用
+     */
+    public void register(String cacheName, Duration ttl) {
+        ttlMillis.put(cacheName, ttl != null ? ttl.toMillis() : 0L);
+    }
+
+    /**
+     * 为一批条目打标签，一次pipeline完成
+     *
+     * @param values key -> 缓存值
+     */
+    public void tag(String cacheName, Map<String, ?> values) {
+        Function<Object, Collection<String>> resolver = resolvers.get(cacheName);
+        if (resolver == null || values.isEmpty()) {
+            return;
+        }
+        Map<String, List<byte[]>> membersByTag = new HashMap<>();
+        values.forEach((key, value) -> {
+            byte[] member = (cacheName + SEPARATOR + key).getBytes(StandardCharsets.UTF_8);
+            for (String tag : resolver.apply(value)) {
+                membersByTag.computeIfAbsent(tag, k -> new ArrayList<>()).add(member);
+            }
+        });
+        if (membersByTag.isEmpty()) {
+            return;
+        }
+
+        byte[] ttl = String.valueOf(ttlMillis.getOrDefault(cacheName, 0L)).getBytes(StandardCharsets.UTF_8);
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Map.Entry<String, List<byte[]>> entry : membersByTag.entrySet()) {
+                    List<byte[]> members = entry.getValue();
+                    for (int from = 0; from < members.size(); from += MEMBERS_PER_CALL) {
+                        List<byte[]> chunk = members.subList(from, Math.min(from + MEMBERS_PER_CALL, members.size()));
+                        byte[][] keysAndArgs = new byte[chunk.size() + 2][];
+                        keysAndArgs[0] = tagKey(entry.getKey());
+                        keysAndArgs[1] = ttl;
+                        for (int i = 0; i < chunk.size(); i++) {
+                            keysAndArgs[i + 2] = chunk.get(i);
+                        }
+                        connection.scriptingCommands().eval(TAG_SCRIPT, ReturnType.INTEGER, 1, keysAndArgs);
+                    }
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            logger.warn("更新缓存标签失败: {} - {}", cacheName, e.getMessage());
+        }
+    }
+
+    /**
+     * 条目是否仍登记在其所有标签下
+     * 写入前打标签、写入后调用：返回false说明期间有按标签的失效取走了标签集合，刚写入的值可能已过时。
+     * 查询失败时无法判断，按仍登记处理
+     */
+    public boolean isTagged(String cacheName, String key, Object value) {
+        Function<Object, Collection<String>> resolver = resolvers.get(cacheName);
+        if (resolver == null) {
+            return true;
+        }
+        Collection<String> tags = resolver.apply(value);
+        if (tags.isEmpty()) {
+            return true;
+        }
+        byte[] member = (cacheName + SEPARATOR + key).getBytes(StandardCharsets.UTF_8);
+        try {
+            List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (String tag : tags) {
+                    connection.setCommands().sIsMember(tagKey(tag), member);
+                }
+                return null;
+            });
+            for (Object result : results) {
+                if (!Boolean.TRUE.equals(result)) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (Exception e) {
+            logger.warn("检查缓存标签失败: {}|{} - {}", cacheName, key, e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * 取出标签下的所有条目并删除这些标签
+     *
+     * @return 缓存名 -> key列表
+     */
+    public Map<String, List<String>> take(Collection<String> tags) {
+        List<String> tagKeys = new ArrayList<>();
+        for (String tag : tags) {
+            tagKeys.add(TAG_PREFIX + tag);
+        }
+        List<?> members = stringRedisTemplate.execute(TAKE_SCRIPT, tagKeys);
+
+        Map<String, List<String>> keysByCache = new HashMap<>();
+        if (members != null) {
+            for (Object member : members) {
+                String[] parts = String.valueOf(member).split("\\|", 2);
+                if (parts.length == 2) {
+                    keysByCache.computeIfAbsent(parts[0], k -> new ArrayList<>()).add(parts[1]);
+                }
+            }
+        }
+        return keysByCache;
+    }
+
+    private static byte[] tagKey(String tag) {
+        return (TAG_PREFIX + tag).getBytes(StandardCharsets.UTF_8);
+    }
+}
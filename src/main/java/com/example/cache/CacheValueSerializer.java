@@ -0,0 +1,132 @@
+package com.example.cache;
+
+import com.example.util.CompressionUtils;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 按缓存注册值类型的二进制序列化器
+ * 每个缓存在配置中登记自己的值类型，值用Smile（二进制JSON）按该类型读写，不再写入类名；
+ * 格式: [魔数 0xCA][版本][标志][写入时间 long][加载耗时 long][值]，值超过阈值时Deflate压缩，
+ * 此时值之前多一个原始长度(int)。
+ *
+ * 首字节不是魔数的数据（升级前的JSON）交给旧的序列化器读取；版本号高于当前版本的数据按未命中处理，
+ * 由本节点重新加载后覆盖，滚动升级期间不会读出错误的值
+ */
+public class CacheValueSerializer implements RedisSerializer<Object> {
+
+    private static final byte MAGIC = (byte) 0xCA;
+    private static final byte VERSION = 1;
+    private static final int FLAG_COMPRESSED = 1;
+    private static final int HEADER_SIZE = 19;
+
+    private final ObjectWriter writer;
+    private final ObjectReader reader;
+    private final RedisSerializer<Object> legacySerializer;
+    private final int compressionThresholdBytes;
+    private final int compressionLevel;
+    private final int maxInflatedBytes;
+
+    /**
+     * @param mapper                    Smile格式的ObjectMapper，不开启默认类型
+     * @param valueType                 该缓存的值类型
+     * @param legacySerializer          读取升级前数据的序列化器
+     * @param compressionThresholdBytes 值超过该大小时压缩，0表示不压缩
+     * @param maxInflatedBytes          解压后的上限，超过时按损坏数据处理
+     */
+    public CacheValueSerializer(ObjectMapper mapper, JavaType valueType, RedisSerializer<Object> legacySerializer,
+                                int compressionThresholdBytes, int compressionLevel, int maxInflatedBytes) {
+        this.writer = mapper.writerFor(valueType);
+        this.reader = mapper.readerFor(valueType);
+        this.legacySerializer = legacySerializer;
+        this.compressionThresholdBytes = compressionThresholdBytes;
+        this.compressionLevel = compressionLevel;
+        this.maxInflatedBytes = maxInflatedBytes;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return null;
+        }
+        CacheEntry entry = value instanceof CacheEntry ? (CacheEntry) value : new CacheEntry(value, 0, 0);
+        byte[] body;
+        try {
+            body = writer.writeValueAsBytes(entry.getValue());
+        } catch (IOException e) {
+            throw new SerializationException("缓存值序列化失败", e);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length + HEADER_SIZE + 4);
+        if (compressionThresholdBytes > 0 && body.length >= compressionThresholdBytes) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 2);
+            CompressionUtils.deflate(body, compressionLevel, compressed);
+            if (compressed.size() + 4 < body.length) {
+                writeHeader(out, FLAG_COMPRESSED, entry);
+                out.write(ByteBuffer.allocate(4).putInt(body.length).array(), 0, 4);
+                out.write(compressed.toByteArray(), 0, compressed.size());
+                return out.toByteArray();
+            }
+        }
+        writeHeader(out, 0, entry);
+        out.write(body, 0, body.length);
+        return out.toByteArray();
+    }
+
+    private static void writeHeader(ByteArrayOutputStream out, int flags, CacheEntry entry) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                .put(MAGIC)
+                .put(VERSION)
+                .put((byte) flags)
+                .putLong(entry.getWrittenAt())
+                .putLong(entry.getLoadMillis());
+        out.write(header.array(), 0, HEADER_SIZE);
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] != MAGIC) {
+            return legacySerializer.deserialize(bytes);
+        }
+        if (bytes.length < HEADER_SIZE) {
+            throw new SerializationException("缓存数据长度不足: " + bytes.length);
+        }
+        if (bytes[1] > VERSION) {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.position(2);
+        int flags = buffer.get();
+        long writtenAt = buffer.getLong();
+        long loadMillis = buffer.getLong();
+        try {
+            Object value;
+            if ((flags & FLAG_COMPRESSED) != 0) {
+                if (bytes.length < HEADER_SIZE + 4) {
+                    throw new SerializationException("缓存数据长度不足: " + bytes.length);
+                }
+                int rawLength = buffer.getInt();
+                int offset = HEADER_SIZE + 4;
+                value = reader.readValue(CompressionUtils.inflate(bytes, offset, bytes.length - offset,
+                        rawLength, maxInflatedBytes));
+            } else {
+                value = reader.readValue(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE);
+            }
+            return new CacheEntry(value, writtenAt, loadMillis);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new SerializationException("缓存值反序列化失败", e);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.cache;
+
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * 缓存预热器
+ * 每个实现负责一个缓存，按页从数据源读取要预热的条目；注册为Spring Bean后由预热服务自动发现
+ */
+public interface CacheWarmer {
+
+    /**
+     * 预热的缓存名
+     */
+    String getCacheName();
+
+    /**
+     * 分页读取数据，每读到一页（缓存key -> 缓存值）调用一次pageConsumer；
+     * pageConsumer返回false时应停止读取
+     */
+    void load(int pageSize, Predicate<Map<Object, Object>> pageConsumer);
+}
@@ -0,0 +1,393 @@
+package com.example.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 两级缓存
+ * L1为进程内Caffeine缓存，L2为Redis缓存；读先查L1，未命中再查L2并回填L1。
+ * 写入和清除同时作用于两级，并通过TwoLevelCacheManager广播给其他节点清除各自的L1
+ *
+ * L1的key统一使用String.valueOf(key)，与RedisCache生成Redis key的方式一致，便于跨节点按key失效
+ *
+ * get(key, valueLoader)（即 @Cacheable(sync = true)）对未命中做单飞处理：同一节点上同一key只有一个线程执行加载，
+ * 其他线程等待同一结果；开启分布式租约时，多个节点之间也只有持有租约的节点访问数据库，其他节点轮询L2等待结果
+ *
+ * 两级中保存的都是CacheEntry。配置了刷新时间（软过期）的缓存，读到超过软过期的条目时直接返回旧值，
+ * 同时在刷新线程池中异步重新加载一次；软过期之前按XFetch算法以一定概率提前刷新，
+ * 加载越慢、越接近软过期，提前刷新的概率越高，避免大量key在同一时刻集中重新加载。
+ * 只有带valueLoader的读取能触发刷新
+ */
+public class TwoLevelCache implements Cache {
+
+    private static final Logger logger = LoggerFactory.getLogger(TwoLevelCache.class);
+
+    // 等待其他节点加载时轮询L2的间隔
+    private static final long LEASE_POLL_MILLIS = 50;
+
+    private final String name;
+    private final com.github.benmanes.caffeine.cache.Cache<String, Object> local;
+    private final Cache remote;
+    private final TwoLevelCacheManager manager;
+
+    // 软过期时间（毫秒），0表示不做提前刷新
+    private final long refreshAfterMillis;
+
+    // 正在加载中的key，同一key的并发未命中共享一个结果
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    // 正在后台刷新的key，同一key同时只提交一次刷新
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    public TwoLevelCache(String name, com.github.benmanes.caffeine.cache.Cache<String, Object> local,
+                         Cache remote, TwoLevelCacheManager manager, long refreshAfterMillis) {
+        this.name = name;
+        this.local = local;
+        this.remote = remote;
+        this.manager = manager;
+        this.refreshAfterMillis = refreshAfterMillis;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return this;
+    }
+
+    public com.github.benmanes.caffeine.cache.Cache<String, Object> getLocalCache() {
+        return local;
+    }
+
+    public Cache getRemoteCache() {
+        return remote;
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        CacheEntry entry = lookup(key, localKey(key));
+        return entry != null ? new SimpleValueWrapper(entry.getValue()) : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("缓存值类型不匹配: " + type.getName() + " - " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        String localKey = localKey(key);
+        CacheEntry entry = lookup(key, localKey);
+        if (entry != null) {
+            if (shouldRefresh(entry)) {
+                scheduleRefresh(key, localKey, valueLoader);
+            }
+            return (T) entry.getValue();
+        }
+
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(localKey, future);
+        if (existing != null) {
+            try {
+                return (T) existing.join();
+            } catch (CompletionException e) {
+                throw asRetrievalException(key, valueLoader, e.getCause());
+            }
+        }
+        try {
+            Object loaded = loadOnce(key, localKey, valueLoader);
+            future.complete(loaded);
+            return (T) loaded;
+        } catch (Throwable e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            future.completeExceptionally(e);
+            throw asRetrievalException(key, valueLoader, e);
+        } finally {
+            inFlight.remove(localKey, future);
+        }
+    }
+
+    /**
+     * 执行一次加载：先查L2；开启分布式租约时只有拿到租约的节点调用valueLoader，
+     * 其他节点在等待时间内轮询L2，超时仍未拿到结果则自行加载，保证可用性
+     */
+    private Object loadOnce(Object key, String localKey, Callable<?> valueLoader) throws Exception {
+        CacheEntry cached = lookupRemote(key, localKey);
+        if (cached != null) {
+            return cached.getValue();
+        }
+
+        String lease = null;
+        if (manager.isLoadLeaseEnabled()) {
+            long deadline = System.currentTimeMillis() + manager.getLoadLeaseWaitMillis();
+            while ((lease = manager.tryAcquireLoadLease(name, localKey)) == null
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(LEASE_POLL_MILLIS);
+                cached = lookupRemote(key, localKey);
+                if (cached != null) {
+                    return cached.getValue();
+                }
+            }
+        }
+        try {
+            return loadAndPut(key, localKey, valueLoader);
+        } finally {
+            if (lease != null) {
+                manager.releaseLoadLease(name, localKey, lease);
+            }
+        }
+    }
+
+    private Object loadAndPut(Object key, String localKey, Callable<?> valueLoader) throws Exception {
+        long start = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        Object loaded = valueLoader.call();
+        manager.recordLoad(name, System.nanoTime() - startNanos);
+        long now = System.currentTimeMillis();
+        if (loaded != null) {
+            putEntry(key, localKey, new CacheEntry(loaded, now, now - start));
+        }
+        return loaded;
+    }
+
+    /**
+     * 是否需要刷新：超过软过期，或按XFetch算法提前刷新
+     * 提前量 = 加载耗时 × beta × -ln(随机数)，随机数取(0,1]
+     */
+    private boolean shouldRefresh(CacheEntry entry) {
+        if (refreshAfterMillis <= 0 || entry.getWrittenAt() <= 0) {
+            return false;
+        }
+        long softExpireAt = entry.getWrittenAt() + refreshAfterMillis;
+        long now = System.currentTimeMillis();
+        if (now >= softExpireAt) {
+            return true;
+        }
+        double random = 1.0 - ThreadLocalRandom.current().nextDouble();
+        double earlyMillis = entry.getLoadMillis() * manager.getRefreshBeta() * -Math.log(random);
+        return now + earlyMillis >= softExpireAt;
+    }
+
+    /**
+     * 在刷新线程池中重新加载，跨节点用加载租约保证只有一个节点在刷新；线程池已满时放弃本次刷新
+     */
+    private void scheduleRefresh(Object key, String localKey, Callable<?> valueLoader) {
+        if (!refreshing.add(localKey)) {
+            return;
+        }
+        try {
+            manager.getRefreshExecutor().execute(() -> {
+                String lease = manager.isLoadLeaseEnabled() ? manager.tryAcquireLoadLease(name, localKey) : "";
+                try {
+                    if (lease != null) {
+                        loadAndPut(key, localKey, valueLoader);
+                    }
+                } catch (Exception e) {
+                    logger.warn("后台刷新缓存失败，继续使用旧值: {}::{} - {}", name, localKey, e.getMessage());
+                } finally {
+                    if (lease != null) {
+                        manager.releaseLoadLease(name, localKey, lease);
+                    }
+                    refreshing.remove(localKey);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(localKey);
+        }
+    }
+
+    private CacheEntry lookup(Object key, String localKey) {
+        Object value = local.getIfPresent(localKey);
+        if (value != null) {
+            manager.recordLookup(name, CacheMetrics.LEVEL_L1);
+            return (CacheEntry) value;
+        }
+        CacheEntry entry = lookupRemote(key, localKey);
+        manager.recordLookup(name, entry != null ? CacheMetrics.LEVEL_L2 : CacheMetrics.LEVEL_MISS);
+        return entry;
+    }
+
+    private CacheEntry lookupRemote(Object key, String localKey) {
+        ValueWrapper wrapper = remote.get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value == null) {
+            return null;
+        }
+        CacheEntry entry = TwoLevelCacheManager.toEntry(value);
+        local.put(localKey, entry);
+        return entry;
+    }
+
+    private static RuntimeException asRetrievalException(Object key, Callable<?> valueLoader, Throwable e) {
+        if (e instanceof ValueRetrievalException) {
+            return (ValueRetrievalException) e;
+        }
+        return new ValueRetrievalException(key, valueLoader, e);
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        if (value == null) {
+            evict(key);
+            return;
+        }
+        putEntry(key, localKey(key), new CacheEntry(value, System.currentTimeMillis(), 0));
+    }
+
+    /**
+     * 先打标签再写入，写入之后到达的按标签失效一定能找到该条目；
+     * 打标签与写入之间到达的失效取走了标签却找不到条目，写入后复查，标签已被取走时清除刚写入的值
+     */
+    private void putEntry(Object key, String localKey, CacheEntry entry) {
+        manager.recordPut(name, localKey, entry.getValue());
+        remote.put(key, entry);
+        local.put(localKey, entry);
+        if (!manager.isTagged(name, localKey, entry.getValue())) {
+            evict(key);
+            return;
+        }
+        manager.publishEvict(name, localKey);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        CacheEntry entry = new CacheEntry(value, System.currentTimeMillis(), 0);
+        String localKey = localKey(key);
+        manager.recordPut(name, localKey, value);
+        ValueWrapper existing = remote.putIfAbsent(key, entry);
+        if (existing == null) {
+            local.put(localKey, entry);
+            if (!manager.isTagged(name, localKey, value)) {
+                evict(key);
+                return null;
+            }
+            manager.publishEvict(name, localKey);
+            return null;
+        }
+        Object existingValue = existing.get();
+        return new SimpleValueWrapper(existingValue instanceof CacheEntry ? ((CacheEntry) existingValue).getValue() : existingValue);
+    }
+
+    @Override
+    public void evict(Object key) {
+        remote.evict(key);
+        evictLocal(localKey(key));
+        manager.recordEvict(name, localKey(key));
+        manager.publishEvict(name, localKey(key));
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        boolean present = remote.evictIfPresent(key);
+        evictLocal(localKey(key));
+        manager.recordEvict(name, localKey(key));
+        manager.publishEvict(name, localKey(key));
+        return present;
+    }
+
+    @Override
+    public void clear() {
+        remote.clear();
+        clearLocal();
+        manager.recordClear(name);
+        manager.publishClear(name);
+    }
+
+    /**
+     * 批量读取：先用getAllPresent查L1，剩余的key用一次MGET查L2并回填L1；不会触发加载
+     *
+     * @return 命中的 key -> 值，未命中的key不在结果中
+     */
+    public Map<Object, Object> getAll(Collection<?> keys) {
+        Map<String, Object> keysByLocalKey = new LinkedHashMap<>();
+        for (Object key : keys) {
+            keysByLocalKey.put(localKey(key), key);
+        }
+        Map<Object, Object> result = new LinkedHashMap<>();
+        Map<String, Object> localHits = local.getAllPresent(keysByLocalKey.keySet());
+        List<String> remaining = new ArrayList<>();
+        keysByLocalKey.forEach((localKey, key) -> {
+            Object value = localHits.get(localKey);
+            if (value != null) {
+                manager.recordLookup(name, CacheMetrics.LEVEL_L1);
+                result.put(key, ((CacheEntry) value).getValue());
+            } else {
+                remaining.add(localKey);
+            }
+        });
+
+        Map<String, CacheEntry> remoteHits = manager.bulkGet(this, remaining);
+        for (String localKey : remaining) {
+            CacheEntry entry = remoteHits.get(localKey);
+            manager.recordLookup(name, entry != null ? CacheMetrics.LEVEL_L2 : CacheMetrics.LEVEL_MISS);
+            if (entry != null) {
+                local.put(localKey, entry);
+                result.put(keysByLocalKey.get(localKey), entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 批量写入：一个pipeline写入L2并回填本节点L1，用于批量回源后的结果
+     */
+    public void putAll(Map<?, ?> values) {
+        manager.bulkPut(this, values, false);
+    }
+
+    /**
+     * 批量预热：直接写入L2，不经过valueLoader；只写入L2中还没有的key（SET NX），
+     * 不覆盖并发更新或清除后重新加载的值，写入的key在各节点L1中失效
+     *
+     * @return 实际写入的条目数
+     */
+    public int warm(Map<?, ?> values) {
+        return manager.bulkPut(this, values, true);
+    }
+
+    void putLocal(String localKey, CacheEntry entry) {
+        local.put(localKey, entry);
+    }
+
+    /**
+     * 只清除本节点L1，收到其他节点的失效通知时调用
+     */
+    void evictLocal(String localKey) {
+        local.invalidate(localKey);
+    }
+
+    void clearLocal() {
+        local.invalidateAll();
+    }
+
+    private static String localKey(Object key) {
+        return String.valueOf(key);
+    }
+}
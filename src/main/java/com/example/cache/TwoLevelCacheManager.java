@@ -0,0 +1,546 @@
+package com.example.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.transaction.AbstractTransactionSupportingCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.util.ByteUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 两级缓存管理器
+ * 每个缓存由一个有界的Caffeine本地缓存（W-TinyLFU淘汰）和Redis缓存组成，本地过期时间应短于Redis中的过期时间。
+ *
+ * 任一节点写入或清除缓存后，通过Redis发布订阅广播失效通知，其他节点收到后只清除自己的L1；
+ * 通知格式: 操作(E/C)|来源节点|缓存名|key
+ */
+public class TwoLevelCacheManager extends AbstractTransactionSupportingCacheManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(TwoLevelCacheManager.class);
+
+    private static final String OP_EVICT = "E";
+    private static final String OP_CLEAR = "C";
+    private static final String SEPARATOR = "|";
+
+    private static final String LOAD_LEASE_PREFIX = "cache-lease:";
+
+    // 只释放自己持有的租约
+    private static final DefaultRedisScript<Long> RELEASE_LEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end " +
+            "return 0", Long.class);
+
+    private final CacheManager remoteCacheManager;
+    private final Map<String, CacheSpec> cacheSpecs;
+    private final CacheSpec defaultCacheSpec;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final String invalidationChannel;
+
+    // 本节点标识，忽略自己发出的失效通知
+    private final String nodeId = UUID.randomUUID().toString();
+
+    // 未命中时是否用Redis租约保证跨节点只有一个加载者
+    private boolean loadLeaseEnabled;
+    private long loadLeaseMillis = 10000;
+    private long loadLeaseWaitMillis = 3000;
+
+    // 后台刷新线程池（有界，满了就放弃刷新）与XFetch的beta参数，beta越大越倾向于提前刷新
+    private Executor refreshExecutor;
+    private double refreshBeta = 1.0;
+
+    // 按缓存维护的key索引，用于统计条目数，为空时不维护
+    private CacheKeyIndex keyIndex;
+
+    // 监控指标，为空时不记录
+    private CacheMetrics metrics;
+
+    // 标签索引，为空时不支持按标签失效
+    private CacheTagIndex tagIndex;
+
+    /**
+     * 单个缓存的配置：本地最大条目数、本地写入后过期时间，以及软过期时间（为空表示不提前刷新，应短于Redis中的过期时间）
+     */
+    public static class CacheSpec {
+        private final long maximumSize;
+        private final Duration expireAfterWrite;
+        private final Duration refreshAfter;
+
+        public CacheSpec(long maximumSize, Duration expireAfterWrite) {
+            this(maximumSize, expireAfterWrite, null);
+        }
+
+        public CacheSpec(long maximumSize, Duration expireAfterWrite, Duration refreshAfter) {
+            this.maximumSize = maximumSize;
+            this.expireAfterWrite = expireAfterWrite;
+            this.refreshAfter = refreshAfter;
+        }
+
+        public long getMaximumSize() { return maximumSize; }
+        public Duration getExpireAfterWrite() { return expireAfterWrite; }
+        public Duration getRefreshAfter() { return refreshAfter; }
+    }
+
+    public TwoLevelCacheManager(CacheManager remoteCacheManager, Map<String, CacheSpec> cacheSpecs,
+                                CacheSpec defaultCacheSpec, StringRedisTemplate stringRedisTemplate,
+                                String invalidationChannel) {
+        this.remoteCacheManager = remoteCacheManager;
+        this.cacheSpecs = cacheSpecs;
+        this.defaultCacheSpec = defaultCacheSpec;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.invalidationChannel = invalidationChannel;
+    }
+
+    public String getInvalidationChannel() {
+        return invalidationChannel;
+    }
+
+    /**
+     * 开启跨节点的加载租约
+     *
+     * @param leaseMillis 租约有效期，应大于一次加载的最长耗时
+     * @param waitMillis  未拿到租约时等待其他节点加载结果的最长时间
+     */
+    public void setLoadLease(boolean enabled, long leaseMillis, long waitMillis) {
+        this.loadLeaseEnabled = enabled;
+        this.loadLeaseMillis = leaseMillis;
+        this.loadLeaseWaitMillis = waitMillis;
+    }
+
+    /**
+     * 设置软过期刷新使用的线程池和XFetch参数
+     */
+    public void setRefresh(Executor refreshExecutor, double refreshBeta) {
+        this.refreshExecutor = refreshExecutor;
+        this.refreshBeta = refreshBeta;
+    }
+
+    public void setKeyIndex(CacheKeyIndex keyIndex) {
+        this.keyIndex = keyIndex;
+    }
+
+    public void setMetrics(CacheMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void setTagIndex(CacheTagIndex tagIndex) {
+        this.tagIndex = tagIndex;
+    }
+
+    Executor getRefreshExecutor() {
+        return refreshExecutor;
+    }
+
+    double getRefreshBeta() {
+        return refreshBeta;
+    }
+
+    boolean isLoadLeaseEnabled() {
+        return loadLeaseEnabled;
+    }
+
+    long getLoadLeaseWaitMillis() {
+        return loadLeaseWaitMillis;
+    }
+
+    /**
+     * 尝试获取加载租约，返回租约标识；其他节点持有时返回null。
+     * Redis不可用时返回空字符串，按已获得处理，退化为仅节点内单飞
+     */
+    String tryAcquireLoadLease(String cacheName, String key) {
+        String token = nodeId + ":" + Thread.currentThread().getId();
+        try {
+            Boolean acquired = stringRedisTemplate.opsForValue().setIfAbsent(
+                    LOAD_LEASE_PREFIX + cacheName + "::" + key, token, loadLeaseMillis, TimeUnit.MILLISECONDS);
+            return Boolean.TRUE.equals(acquired) ? token : null;
+        } catch (Exception e) {
+            logger.warn("获取缓存加载租约失败: {} - {}", cacheName, e.getMessage());
+            return "";
+        }
+    }
+
+    void releaseLoadLease(String cacheName, String key, String token) {
+        if (token.isEmpty()) {
+            return;
+        }
+        try {
+            stringRedisTemplate.execute(RELEASE_LEASE_SCRIPT,
+                    Collections.singletonList(LOAD_LEASE_PREFIX + cacheName + "::" + key), token);
+        } catch (Exception e) {
+            logger.warn("释放缓存加载租约失败: {} - {}", cacheName, e.getMessage());
+        }
+    }
+
+    @Override
+    protected Collection<? extends Cache> loadCaches() {
+        List<Cache> caches = new ArrayList<>();
+        for (String name : remoteCacheManager.getCacheNames()) {
+            Cache remote = remoteCacheManager.getCache(name);
+            if (remote != null) {
+                caches.add(createCache(name, remote));
+            }
+        }
+        return caches;
+    }
+
+    @Override
+    protected Cache getMissingCache(String name) {
+        Cache remote = remoteCacheManager.getCache(name);
+        return remote != null ? createCache(name, remote) : null;
+    }
+
+    private TwoLevelCache createCache(String name, Cache remote) {
+        CacheSpec spec = cacheSpecs.getOrDefault(name, defaultCacheSpec);
+        com.github.benmanes.caffeine.cache.Cache<String, Object> local = Caffeine.newBuilder()
+                .maximumSize(spec.getMaximumSize())
+                .expireAfterWrite(spec.getExpireAfterWrite())
+                .recordStats()
+                .build();
+        long refreshAfterMillis = spec.getRefreshAfter() != null && refreshExecutor != null
+                ? spec.getRefreshAfter().toMillis() : 0;
+        if (metrics != null) {
+            metrics.bindLocal(name, local);
+        }
+        if (remote instanceof RedisCache) {
+            Duration ttl = ((RedisCache) remote).getCacheConfiguration().getTtlFunction().getTimeToLive(name, null);
+            if (keyIndex != null) {
+                keyIndex.register(name, ttl);
+            }
+            if (tagIndex != null) {
+                tagIndex.register(name, ttl);
+            }
+        }
+        return new TwoLevelCache(name, local, remote, this, refreshAfterMillis);
+    }
+
+    void recordLookup(String cacheName, String level) {
+        if (metrics != null) {
+            metrics.recordLookup(cacheName, level);
+        }
+    }
+
+    void recordLoad(String cacheName, long nanos) {
+        if (metrics != null) {
+            metrics.recordLoad(cacheName, nanos);
+        }
+    }
+
+    void recordPut(String cacheName, String key, Object value) {
+        if (keyIndex != null) {
+            keyIndex.add(cacheName, key);
+        }
+        if (tagIndex != null) {
+            tagIndex.tag(cacheName, Collections.singletonMap(key, value));
+        }
+    }
+
+    /**
+     * 写入后确认条目仍在其标签下，未启用标签索引时总是返回true
+     */
+    boolean isTagged(String cacheName, String key, Object value) {
+        return tagIndex == null || tagIndex.isTagged(cacheName, key, value);
+    }
+
+    void recordEvict(String cacheName, String key) {
+        if (keyIndex != null) {
+            keyIndex.remove(cacheName, key);
+        }
+    }
+
+    void recordClear(String cacheName) {
+        if (keyIndex != null) {
+            keyIndex.clear(cacheName);
+        }
+    }
+
+    /**
+     * 批量写入L2：并行序列化后用一个pipeline写入（SET带各自的过期时间）。
+     * 预热（onlyIfAbsent）时用 SET NX，只写入L2中还没有的key，不覆盖并发更新写入的新值；
+     * 实际写入的key在各节点L1中失效。否则覆盖写入并回填本节点L1
+     *
+     * @return 实际写入的条目数
+     */
+    int bulkPut(TwoLevelCache cache, Map<?, ?> values, boolean onlyIfAbsent) {
+        if (values.isEmpty()) {
+            return 0;
+        }
+        if (!(cache.getRemoteCache() instanceof RedisCache)) {
+            int written = 0;
+            for (Map.Entry<?, ?> e : values.entrySet()) {
+                if (!onlyIfAbsent) {
+                    cache.put(e.getKey(), e.getValue());
+                    written++;
+                } else if (cache.putIfAbsent(e.getKey(), e.getValue()) == null) {
+                    written++;
+                }
+            }
+            return written;
+        }
+
+        String cacheName = cache.getName();
+        RedisCacheConfiguration config = ((RedisCache) cache.getRemoteCache()).getCacheConfiguration();
+        String prefix = config.getKeyPrefixFor(cacheName);
+        long now = System.currentTimeMillis();
+        List<SerializedEntry> entries = values.entrySet().parallelStream()
+                .filter(e -> e.getKey() != null && e.getValue() != null)
+                .map(e -> {
+                    String key = String.valueOf(e.getKey());
+                    CacheEntry entry = new CacheEntry(e.getValue(), now, 0);
+                    Duration ttl = config.getTtlFunction().getTimeToLive(e.getKey(), e.getValue());
+                    return new SerializedEntry(key, entry,
+                            ByteUtils.getBytes(config.getKeySerializationPair().write(prefix + key)),
+                            ByteUtils.getBytes(config.getValueSerializationPair().write(entry)),
+                            ttl != null && !ttl.isZero() && !ttl.isNegative() ? Expiration.from(ttl) : Expiration.persistent());
+                })
+                .collect(Collectors.toList());
+
+        // 先打标签再写入，写入之后到达的按标签失效一定能找到这些条目
+        if (tagIndex != null) {
+            Map<String, Object> tagged = new HashMap<>();
+            values.forEach((key, value) -> {
+                if (key != null && value != null) {
+                    tagged.put(String.valueOf(key), value);
+                }
+            });
+            tagIndex.tag(cacheName, tagged);
+        }
+
+        RedisStringCommands.SetOption option = onlyIfAbsent
+                ? RedisStringCommands.SetOption.ifAbsent() : RedisStringCommands.SetOption.upsert();
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (SerializedEntry entry : entries) {
+                connection.stringCommands().set(entry.rawKey, entry.rawValue, entry.expiration, option);
+            }
+            return null;
+        });
+
+        if (keyIndex != null) {
+            keyIndex.addAll(cacheName, entries.stream().map(entry -> entry.key).collect(Collectors.toList()));
+        }
+        if (!onlyIfAbsent) {
+            for (SerializedEntry entry : entries) {
+                cache.putLocal(entry.key, entry.entry);
+            }
+            return entries.size();
+        }
+
+        List<String> written = new ArrayList<>();
+        for (int i = 0; i < entries.size() && i < results.size(); i++) {
+            if (Boolean.TRUE.equals(results.get(i))) {
+                written.add(entries.get(i).key);
+            }
+        }
+        if (!written.isEmpty()) {
+            for (String key : written) {
+                cache.evictLocal(key);
+            }
+            publishEvicts(cacheName, written);
+        }
+        return written.size();
+    }
+
+    /**
+     * 在一个pipeline中广播一批key的L1失效
+     */
+    private void publishEvicts(String cacheName, List<String> keys) {
+        byte[] channel = invalidationChannel.getBytes(StandardCharsets.UTF_8);
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (String key : keys) {
+                    connection.publish(channel, (OP_EVICT + SEPARATOR + nodeId + SEPARATOR + cacheName + SEPARATOR + key)
+                            .getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            logger.warn("广播缓存失效失败: {} - {}", cacheName, e.getMessage());
+        }
+    }
+
+    /**
+     * 批量读取L2，一次MGET完成
+     *
+     * @return 命中的 key -> 缓存条目
+     */
+    Map<String, CacheEntry> bulkGet(TwoLevelCache cache, List<String> keys) {
+        Map<String, CacheEntry> result = new HashMap<>();
+        if (keys.isEmpty()) {
+            return result;
+        }
+        if (!(cache.getRemoteCache() instanceof RedisCache)) {
+            for (String key : keys) {
+                Cache.ValueWrapper wrapper = cache.getRemoteCache().get(key);
+                if (wrapper != null && wrapper.get() != null) {
+                    result.put(key, toEntry(wrapper.get()));
+                }
+            }
+            return result;
+        }
+
+        RedisCacheConfiguration config = ((RedisCache) cache.getRemoteCache()).getCacheConfiguration();
+        String prefix = config.getKeyPrefixFor(cache.getName());
+        byte[][] rawKeys = new byte[keys.size()][];
+        for (int i = 0; i < keys.size(); i++) {
+            rawKeys[i] = ByteUtils.getBytes(config.getKeySerializationPair().write(prefix + keys.get(i)));
+        }
+        List<byte[]> rawValues = stringRedisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.stringCommands().mGet(rawKeys));
+        if (rawValues == null) {
+            return result;
+        }
+        for (int i = 0; i < keys.size() && i < rawValues.size(); i++) {
+            byte[] rawValue = rawValues.get(i);
+            if (rawValue != null) {
+                Object value = config.getValueSerializationPair().read(ByteBuffer.wrap(rawValue));
+                if (value != null) {
+                    result.put(keys.get(i), toEntry(value));
+                }
+            }
+        }
+        return result;
+    }
+
+    // 兼容升级前直接存储的值
+    static CacheEntry toEntry(Object value) {
+        return value instanceof CacheEntry ? (CacheEntry) value : new CacheEntry(value, 0, 0);
+    }
+
+    /**
+     * 清除带有任一标签的所有缓存条目
+     * 先用一个脚本取出并删除标签集合，再按缓存在一个pipeline中删除L2的key并广播L1失效
+     *
+     * @return 清除的条目数
+     */
+    public int invalidateTags(Collection<String> tags) {
+        if (tagIndex == null || tags.isEmpty()) {
+            return 0;
+        }
+        int evicted = 0;
+        for (Map.Entry<String, List<String>> entry : tagIndex.take(tags).entrySet()) {
+            TwoLevelCache cache = unwrap(lookupCache(entry.getKey()));
+            if (cache != null) {
+                evicted += bulkEvict(cache, entry.getValue());
+            }
+        }
+        return evicted;
+    }
+
+    private int bulkEvict(TwoLevelCache cache, List<String> keys) {
+        String cacheName = cache.getName();
+        if (!(cache.getRemoteCache() instanceof RedisCache)) {
+            keys.forEach(cache::evict);
+            return keys.size();
+        }
+
+        RedisCacheConfiguration config = ((RedisCache) cache.getRemoteCache()).getCacheConfiguration();
+        String prefix = config.getKeyPrefixFor(cacheName);
+        byte[][] rawKeys = new byte[keys.size()][];
+        for (int i = 0; i < keys.size(); i++) {
+            rawKeys[i] = ByteUtils.getBytes(config.getKeySerializationPair().write(prefix + keys.get(i)));
+        }
+        byte[] channel = invalidationChannel.getBytes(StandardCharsets.UTF_8);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.keyCommands().del(rawKeys);
+            for (String key : keys) {
+                connection.publish(channel, (OP_EVICT + SEPARATOR + nodeId + SEPARATOR + cacheName + SEPARATOR + key)
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+
+        for (String key : keys) {
+            cache.evictLocal(key);
+        }
+        if (keyIndex != null) {
+            keyIndex.removeAll(cacheName, keys);
+        }
+        return keys.size();
+    }
+
+    private static class SerializedEntry {
+        private final String key;
+        private final CacheEntry entry;
+        private final byte[] rawKey;
+        private final byte[] rawValue;
+        private final Expiration expiration;
+
+        SerializedEntry(String key, CacheEntry entry, byte[] rawKey, byte[] rawValue, Expiration expiration) {
+            this.key = key;
+            this.entry = entry;
+            this.rawKey = rawKey;
+            this.rawValue = rawValue;
+            this.expiration = expiration;
+        }
+    }
+
+    void publishEvict(String cacheName, String key) {
+        publish(OP_EVICT + SEPARATOR + nodeId + SEPARATOR + cacheName + SEPARATOR + key);
+    }
+
+    void publishClear(String cacheName) {
+        publish(OP_CLEAR + SEPARATOR + nodeId + SEPARATOR + cacheName + SEPARATOR);
+    }
+
+    private void publish(String message) {
+        try {
+            stringRedisTemplate.convertAndSend(invalidationChannel, message);
+        } catch (Exception e) {
+            // 广播失败时其他节点的L1最迟在本地过期时间后恢复一致
+            logger.warn("广播缓存失效通知失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 处理其他节点发来的失效通知
+     */
+    public void handleInvalidation(String message) {
+        String[] parts = message.split("\\|", 4);
+        if (parts.length < 4 || nodeId.equals(parts[1])) {
+            return;
+        }
+        TwoLevelCache twoLevelCache = unwrap(lookupCache(parts[2]));
+        if (twoLevelCache == null) {
+            return;
+        }
+        if (OP_CLEAR.equals(parts[0])) {
+            twoLevelCache.clearLocal();
+        } else {
+            twoLevelCache.evictLocal(parts[3]);
+        }
+    }
+
+    /**
+     * 取出未经事务装饰的两级缓存，用于统计和预热
+     */
+    public TwoLevelCache getTwoLevelCache(String name) {
+        return unwrap(getCache(name));
+    }
+
+    private static TwoLevelCache unwrap(Cache cache) {
+        if (cache instanceof TransactionAwareCacheDecorator) {
+            cache = ((TransactionAwareCacheDecorator) cache).getTargetCache();
+        }
+        return cache instanceof TwoLevelCache ? (TwoLevelCache) cache : null;
+    }
+}
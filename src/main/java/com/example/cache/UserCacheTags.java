@@ -0,0 +1,74 @@
+package com.example.cache;
+
+import com.example.dto.UserIdPage;
+import com.example.entity.User;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 用户相关缓存的标签
+ * user:{id} 标记条目中包含该用户的数据，用户修改或删除时清除这些条目；
+ * user-ref:{id} 标记条目中只引用了该用户的ID（ID列表），用户删除或可搜索字段变化时清除这些条目。
+ * 条目只按其中实际包含的用户打标签，失效时只清除受影响的条目：
+ * 新增用户、或修改后才开始匹配某个搜索的用户，不会出现在已缓存的结果中，
+ * 这部分不一致由列表、搜索和分页缓存较短的过期时间（8-15分钟，软过期后异步刷新）兜底
+ */
+public final class UserCacheTags {
+
+    private UserCacheTags() {
+    }
+
+    public static String user(Long id) {
+        return "user:" + id;
+    }
+
+    public static String userRef(Long id) {
+        return "user-ref:" + id;
+    }
+
+    /**
+     * 从只保存ID的搜索/分页结果中提取标签
+     */
+    public static Collection<String> fromIdPage(Object value) {
+        Set<String> tags = new LinkedHashSet<>();
+        if (value instanceof UserIdPage) {
+            for (Long id : ((UserIdPage) value).getIds()) {
+                tags.add(userRef(id));
+            }
+        }
+        return tags;
+    }
+
+    /**
+     * 从用户列表类的缓存值（含 users 字段的Map）中提取标签
+     */
+    public static Collection<String> fromUserResult(Object value) {
+        Set<String> tags = new LinkedHashSet<>();
+        if (value instanceof Map) {
+            Object users = ((Map<?, ?>) value).get("users");
+            if (users instanceof Collection) {
+                for (Object user : (Collection<?>) users) {
+                    Long id = userId(user);
+                    if (id != null) {
+                        tags.add(user(id));
+                    }
+                }
+            }
+        }
+        return tags;
+    }
+
+    private static Long userId(Object user) {
+        if (user instanceof User) {
+            return ((User) user).getId();
+        }
+        if (user instanceof Map) {
+            Object id = ((Map<?, ?>) user).get("id");
+            return id instanceof Number ? ((Number) id).longValue() : null;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.codec;
+
+import com.example.dto.MessageDTO;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * 基于固定字段顺序的二进制消息编解码器
+ *
+ * 格式: [魔数][版本][id][content][sender][receiver][type][timestamp][ttlSeconds]
+ * 字符串使用 varint(长度+1) + UTF-8字节，长度0表示null；ttlSeconds同样写 varint(值+1)，0表示null；
+ * 版本1没有ttlSeconds字段，仍可解码；
+ * 不写字段名和类型信息，比带类名的JSON小得多，编解码也不需要反射
+ *
+ * 缓存值使用Smile（见CacheValueSerializer），消息体没有改用Smile：消息只有固定的几个字段，
+ * 按固定顺序写入比Smile省去每条消息的字段名，且已写入Redis的消息体格式保持不变；
+ * 缓存值类型多、结构各异，手写编码不划算，才由Smile按登记的类型读写
+ */
+public class BinaryMessageCodec implements MessageCodec {
+
+    private static final byte MAGIC = (byte) 0xB1;
+    private static final byte VERSION = 2;
+    private static final byte VERSION_WITHOUT_TTL = 1;
+
+    // 兼容旧数据：以 '{'（带@class的消息JSON）或 '"'（包成JSON字符串的消息JSON）开头的内容按JSON解码
+    private final JsonMessageCodec jsonFallback = new JsonMessageCodec();
+
+    @Override
+    public byte[] encode(MessageDTO message) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 + lengthHint(message.getContent()));
+        out.write(MAGIC);
+        out.write(VERSION);
+        writeString(out, message.getId());
+        writeString(out, message.getContent());
+        writeString(out, message.getSender());
+        writeString(out, message.getReceiver());
+        writeString(out, message.getType());
+
+        LocalDateTime timestamp = message.getTimestamp();
+        if (timestamp == null) {
+            out.write(0);
+        } else {
+            out.write(1);
+            writeVarLong(out, timestamp.toEpochSecond(ZoneOffset.UTC));
+            writeVarLong(out, timestamp.getNano());
+        }
+        Long ttlSeconds = message.getTtlSeconds();
+        writeVarLong(out, ttlSeconds != null ? ttlSeconds + 1 : 0);
+        return out.toByteArray();
+    }
+
+    @Override
+    public MessageDTO decode(byte[] data) {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        if (data[0] == '{' || data[0] == '"') {
+            return jsonFallback.decode(data);
+        }
+        if (data.length < 2 || data[0] != MAGIC) {
+            throw new IllegalArgumentException("未知的消息编码格式");
+        }
+        if (data[1] != VERSION && data[1] != VERSION_WITHOUT_TTL) {
+            throw new IllegalArgumentException("不支持的消息编码版本: " + data[1]);
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(data, 2, data.length - 2);
+        MessageDTO message = new MessageDTO();
+        message.setId(readString(buffer));
+        message.setContent(readString(buffer));
+        message.setSender(readString(buffer));
+        message.setReceiver(readString(buffer));
+        message.setType(readString(buffer));
+
+        if (buffer.get() == 1) {
+            long epochSecond = readVarLong(buffer);
+            int nano = (int) readVarLong(buffer);
+            message.setTimestamp(LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC));
+        } else {
+            message.setTimestamp(null);
+        }
+        if (data[1] != VERSION_WITHOUT_TTL) {
+            long ttl = readVarLong(buffer);
+            message.setTtlSeconds(ttl != 0 ? ttl - 1 : null);
+        }
+        return message;
+    }
+
+    private static int lengthHint(String value) {
+        return value != null ? value.length() : 0;
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        if (value == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length + 1L);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = (int) readVarLong(buffer);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 写入变长整数，负数先做zigzag转换
+     */
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long v = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            v |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return (v >>> 1) ^ -(v & 1);
+    }
+}
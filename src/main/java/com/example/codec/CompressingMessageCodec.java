@@ -0,0 +1,60 @@
+package com.example.codec;
+
+import com.example.dto.MessageDTO;
+import com.example.util.CompressionUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * 压缩装饰器
+ * 编码结果超过阈值时用Deflate压缩，格式: [压缩标记][原始长度 int][压缩数据]；
+ * 未超过阈值或压缩后没有变小时原样返回，解码时按首字节判断是否需要先解压；
+ * 原始长度超过上限的数据直接拒绝，防止按伪造的长度分配内存
+ */
+public class CompressingMessageCodec implements MessageCodec {
+
+    // 与二进制编码的魔数(0xB1)和JSON的 '{' 都不冲突
+    private static final byte COMPRESSED = (byte) 0xC1;
+    private static final int HEADER_SIZE = 5;
+
+    private final MessageCodec delegate;
+    private final int thresholdBytes;
+    private final int level;
+    private final int maxRawBytes;
+
+    public CompressingMessageCodec(MessageCodec delegate, int thresholdBytes, int level, int maxRawBytes) {
+        this.delegate = delegate;
+        this.thresholdBytes = thresholdBytes;
+        this.level = level;
+        this.maxRawBytes = maxRawBytes;
+    }
+
+    @Override
+    public byte[] encode(MessageDTO message) {
+        byte[] raw = delegate.encode(message);
+        if (thresholdBytes <= 0 || raw.length < thresholdBytes) {
+            return raw;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + HEADER_SIZE);
+        out.write(COMPRESSED);
+        out.write(ByteBuffer.allocate(4).putInt(raw.length).array(), 0, 4);
+        CompressionUtils.deflate(raw, level, out);
+        return out.size() < raw.length ? out.toByteArray() : raw;
+    }
+
+    @Override
+    public MessageDTO decode(byte[] data) {
+        if (data == null || data.length == 0 || data[0] != COMPRESSED) {
+            return delegate.decode(data);
+        }
+
+        if (data.length < HEADER_SIZE) {
+            throw new IllegalArgumentException("压缩消息长度不足: " + data.length);
+        }
+        int rawLength = ByteBuffer.wrap(data, 1, 4).getInt();
+        byte[] raw = CompressionUtils.inflate(data, HEADER_SIZE, data.length - HEADER_SIZE, rawLength, maxRawBytes);
+        return delegate.decode(raw);
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.codec;
+
+import com.example.dto.MessageDTO;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+/**
+ * JSON消息编解码器
+ * 可读性好，便于用redis-cli直接排查消息内容。
+ *
+ * 同时负责读取升级前的数据：message:* 由 GenericJackson2JsonRedisSerializer 写入，带有 @class 字段；
+ * 队列中的元素是先转成JSON字符串再序列化的，外层多一层JSON字符串。解码时忽略未知字段，并拆开外层字符串
+ */
+public class JsonMessageCodec implements MessageCodec {
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    @Override
+    public byte[] encode(MessageDTO message) {
+        try {
+            return objectMapper.writeValueAsBytes(message);
+        } catch (Exception e) {
+            throw new RuntimeException("消息编码失败", e);
+        }
+    }
+
+    @Override
+    public MessageDTO decode(byte[] data) {
+        try {
+            if (data.length > 0 && data[0] == '"') {
+                return objectMapper.readValue(objectMapper.readValue(data, String.class), MessageDTO.class);
+            }
+            return objectMapper.readValue(data, MessageDTO.class);
+        } catch (Exception e) {
+            throw new RuntimeException("消息解码失败", e);
+        }
+    }
+}
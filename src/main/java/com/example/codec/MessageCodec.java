@@ -0,0 +1,20 @@
+package com.example.codec;
+
+import com.example.dto.MessageDTO;
+
+/**
+ * 消息编解码器
+ * 队列、缓存和发布订阅共用同一种编码，消息体在Redis中只存储一份
+ */
+public interface MessageCodec {
+
+    /**
+     * 将消息编码为字节数组
+     */
+    byte[] encode(MessageDTO message);
+
+    /**
+     * 从字节数组解码消息
+     */
+    MessageDTO decode(byte[] data);
+}
@@ -4,12 +4,15 @@ import com.example.entity.User;
 import com.example.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Component;
 
 import java.util.Set;
 
 @Component
+@Order(Ordered.HIGHEST_PRECEDENCE) // 先于缓存预热写入初始数据
 public class DataInitializer implements CommandLineRunner {
     
     @Autowired
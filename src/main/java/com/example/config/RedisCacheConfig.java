@@ -1,53 +1,186 @@
 package com.example.config;
 
+import com.example.cache.CacheKeyIndex;
+import com.example.cache.CacheMetrics;
+import com.example.cache.CacheTagIndex;
+import com.example.cache.CacheValueSerializer;
+import com.example.cache.TwoLevelCacheManager;
+import com.example.cache.TwoLevelCacheManager.CacheSpec;
+import com.example.cache.UserCacheTags;
+import com.example.dto.UserIdPage;
+import com.example.dto.UserSummary;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.BatchStrategies;
 import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * Redis缓存配置
- * 将Spring Cache存储到Redis中
+ * 将Spring Cache存储到Redis中，前面再加一层进程内的本地缓存
  */
 @Configuration
 @EnableCaching
 public class RedisCacheConfig {
 
+    // 两级缓存本地失效通知频道
+    private static final String CACHE_INVALIDATION_CHANNEL = "channel:cache-invalidate";
+
+    @Value("${cache.load-lease.enabled:true}")
+    private boolean loadLeaseEnabled;
+
+    @Value("${cache.load-lease.lease-ms:10000}")
+    private long loadLeaseMillis;
+
+    @Value("${cache.load-lease.wait-ms:3000}")
+    private long loadLeaseWaitMillis;
+
+    // 缓存值超过该大小时压缩存储，0 表示不压缩
+    @Value("${cache.serializer.compression.threshold-bytes:2048}")
+    private int serializerCompressionThreshold;
+
+    @Value("${cache.serializer.compression.level:1}")
+    private int serializerCompressionLevel;
+
+    @Value("${cache.serializer.compression.max-inflated-bytes:16777216}")
+    private int serializerMaxInflatedBytes;
+
+    // XFetch提前刷新的beta参数，1.0为论文推荐值，越大越早刷新
+    @Value("${cache.refresh.beta:1.0}")
+    private double refreshBeta;
+
     @Autowired
     private RedisConnectionFactory redisConnectionFactory;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
     /**
-     * 配置Redis作为缓存管理器
-     * 所有@Cacheable注解的缓存都会存储到Redis
+     * 两级缓存管理器
+     * 所有@Cacheable注解的缓存先查本地L1，未命中再查Redis（L2）；
+     * L1过期时间短于对应的Redis过期时间，并通过发布订阅在节点间同步失效
      */
     @Bean
     @Primary
-    public CacheManager redisCacheManager() {
+    public CacheManager cacheManager() {
+        // 本地条目数、本地过期时间、软过期时间（超过后返回旧值并异步刷新，须短于下面Redis中的过期时间）
+        Map<String, CacheSpec> cacheSpecs = new HashMap<>();
+        cacheSpecs.put("findUsersByEmail", new CacheSpec(10000, Duration.ofMinutes(10), Duration.ofMinutes(100)));
+        cacheSpecs.put("userList", new CacheSpec(10, Duration.ofMinutes(1), Duration.ofMinutes(12)));
+        cacheSpecs.put("userDetails", new CacheSpec(10000, Duration.ofMinutes(5), Duration.ofMinutes(38)));
+        cacheSpecs.put("userSearch", new CacheSpec(1000, Duration.ofMinutes(1), Duration.ofMinutes(8)));
+        cacheSpecs.put("userPage", new CacheSpec(1000, Duration.ofMinutes(1), Duration.ofMinutes(6)));
+
+        TwoLevelCacheManager cacheManager = new TwoLevelCacheManager(redisCacheManager(), cacheSpecs,
+                new CacheSpec(1000, Duration.ofMinutes(1)), stringRedisTemplate, CACHE_INVALIDATION_CHANNEL);
+        cacheManager.setTransactionAware(true); // 支持事务
+        cacheManager.setRefresh(cacheRefreshExecutor(), refreshBeta);
+        // @Cacheable(sync = true) 的未命中在节点内单飞，开启后跨节点也只有一个加载者
+        cacheManager.setLoadLease(loadLeaseEnabled, loadLeaseMillis, loadLeaseWaitMillis);
+        cacheManager.setKeyIndex(cacheKeyIndex());
+        cacheManager.setMetrics(cacheMetrics());
+        cacheManager.setTagIndex(cacheTagIndex());
+
+        redisMessageListenerContainer.addMessageListener((message, pattern) ->
+                cacheManager.handleInvalidation(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(CACHE_INVALIDATION_CHANNEL));
+        return cacheManager;
+    }
+
+    /**
+     * 各缓存的key索引，写入和清除时增量维护，用于统计条目数而不扫描Redis
+     */
+    @Bean
+    public CacheKeyIndex cacheKeyIndex() {
+        return new CacheKeyIndex(stringRedisTemplate);
+    }
+
+    /**
+     * 缓存标签索引：列表、搜索和分页结果按其中包含的用户打标签，修改用户时只清除受影响的条目
+     */
+    @Bean
+    public CacheTagIndex cacheTagIndex() {
+        CacheTagIndex tagIndex = new CacheTagIndex(stringRedisTemplate);
+        tagIndex.registerResolver("userList", UserCacheTags::fromUserResult);
+        tagIndex.registerResolver("userSearch", UserCacheTags::fromIdPage);
+        tagIndex.registerResolver("userPage", UserCacheTags::fromIdPage);
+        return tagIndex;
+    }
+
+    /**
+     * 缓存监控指标：两级命中层级、回源加载耗时和值大小
+     */
+    @Bean
+    public CacheMetrics cacheMetrics() {
+        return new CacheMetrics(meterRegistry);
+    }
+
+    /**
+     * 缓存后台刷新线程池
+     * 有界队列，满了直接丢弃刷新任务（调用方继续使用旧值），不会拖慢请求线程
+     */
+    @Bean
+    public ThreadPoolTaskExecutor cacheRefreshExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);        // 核心线程数
+        executor.setMaxPoolSize(4);         // 最大线程数
+        executor.setQueueCapacity(100);     // 队列容量
+        executor.setThreadNamePrefix("CacheRefresh-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 配置Redis作为缓存管理器（两级缓存中的L2）
+     */
+    @Bean
+    public RedisCacheManager redisCacheManager() {
         // 配置JSON序列化器
-        ObjectMapper objectMapper = new ObjectMapper();
-        objectMapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
-        objectMapper.activateDefaultTyping(LaissezFaireSubTypeValidator.instance, ObjectMapper.DefaultTyping.NON_FINAL, JsonTypeInfo.As.PROPERTY);
-        objectMapper.registerModule(new JavaTimeModule()); // 支持LocalDateTime等时间类型
-        
-        GenericJackson2JsonRedisSerializer jsonSerializer = new GenericJackson2JsonRedisSerializer(objectMapper);
+        GenericJackson2JsonRedisSerializer jsonSerializer = new GenericJackson2JsonRedisSerializer(jsonCacheMapper());
+
+        // 登记了值类型的缓存使用二进制序列化器，不写类名；仍能读取升级前用上面JSON序列化器写入的数据
+        ObjectMapper smileMapper = smileCacheMapper();
+        JavaType mapType = smileMapper.getTypeFactory().constructMapType(Map.class, String.class, Object.class);
+        JavaType summaryType = smileMapper.constructType(UserSummary.class);
+        JavaType idPageType = smileMapper.constructType(UserIdPage.class);
 
         // 默认缓存配置
         RedisCacheConfiguration defaultConfig = RedisCacheConfiguration.defaultCacheConfig()
@@ -62,35 +195,79 @@ public class RedisCacheConfig {
         // 为不同的缓存名称配置不同的过期时间
         Map<String, RedisCacheConfiguration> cacheConfigurations = new HashMap<>();
         
-        // 用户邮箱缓存 - 长期缓存（您repository中使用的）
+        // 用户邮箱缓存 - 长期缓存（UserService.getUserByEmail，写库时同步更新）
         cacheConfigurations.put("findUsersByEmail", defaultConfig
                 .entryTtl(Duration.ofHours(2))
-                .prefixCacheNameWith("user::email::"));
+                .prefixCacheNameWith("user::email::")
+                .serializeValuesWith(typedValues(smileMapper, summaryType, jsonSerializer)));
         
         // 用户列表缓存 - 短期缓存
         cacheConfigurations.put("userList", defaultConfig
                 .entryTtl(Duration.ofMinutes(15))
-                .prefixCacheNameWith("user::list::"));
+                .prefixCacheNameWith("user::list::")
+                .serializeValuesWith(typedValues(smileMapper, mapType, jsonSerializer)));
         
-        // 用户详情缓存 - 中期缓存
+        // 用户详情缓存 - 中期缓存（按ID保存用户视图，搜索和分页结果从这里批量取用户）
         cacheConfigurations.put("userDetails", defaultConfig
                 .entryTtl(Duration.ofMinutes(45))
-                .prefixCacheNameWith("user::detail::"));
+                .prefixCacheNameWith("user::detail::")
+                .serializeValuesWith(typedValues(smileMapper, summaryType, jsonSerializer)));
         
-        // 搜索结果缓存 - 短期缓存
+        // 搜索结果缓存 - 短期缓存（只保存ID列表；前缀与旧的整块结果区分开）
         cacheConfigurations.put("userSearch", defaultConfig
                 .entryTtl(Duration.ofMinutes(10))
-                .prefixCacheNameWith("search::"));
+                .prefixCacheNameWith("search::ids::")
+                .serializeValuesWith(typedValues(smileMapper, idPageType, jsonSerializer)));
         
-        // 分页缓存 - 短期缓存
+        // 分页缓存 - 短期缓存（只保存ID列表）
         cacheConfigurations.put("userPage", defaultConfig
                 .entryTtl(Duration.ofMinutes(8))
-                .prefixCacheNameWith("page::"));
+                .prefixCacheNameWith("page::ids::")
+                .serializeValuesWith(typedValues(smileMapper, idPageType, jsonSerializer)));
+
+        // 清空缓存时用SCAN分批查找key，避免KEYS阻塞Redis
+        RedisCacheWriter cacheWriter = RedisCacheWriter.nonLockingRedisCacheWriter(
+                redisConnectionFactory, BatchStrategies.scan(1000));
 
-        return RedisCacheManager.builder(redisConnectionFactory)
+        // 记录各缓存写入Redis的值大小
+        cacheConfigurations.replaceAll((name, config) -> config.serializeValuesWith(
+                cacheMetrics().meterPayloads(name, config.getValueSerializationPair())));
+
+        // 开启统计后Spring Boot会为每个缓存注册命中、未命中、写入和删除指标
+        return RedisCacheManager.builder(cacheWriter)
                 .cacheDefaults(defaultConfig)
                 .withInitialCacheConfigurations(cacheConfigurations)
-                .transactionAware() // 支持事务
+                .enableStatistics()
                 .build();
     }
+
+    /**
+     * 默认缓存值（带类名的JSON）使用的ObjectMapper
+     */
+    public static ObjectMapper jsonCacheMapper() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
+        objectMapper.activateDefaultTyping(LaissezFaireSubTypeValidator.instance, ObjectMapper.DefaultTyping.NON_FINAL, JsonTypeInfo.As.PROPERTY);
+        objectMapper.registerModule(new JavaTimeModule()); // 支持LocalDateTime等时间类型
+        return objectMapper;
+    }
+
+    /**
+     * 登记了值类型的缓存（CacheValueSerializer）使用的Smile格式ObjectMapper
+     */
+    public static ObjectMapper smileCacheMapper() {
+        ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+        smileMapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
+        smileMapper.registerModule(new JavaTimeModule());
+        smileMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS); // 与接口返回的时间格式一致
+        smileMapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES); // 增删字段时兼容旧数据
+        return smileMapper;
+    }
+
+    private RedisSerializationContext.SerializationPair<Object> typedValues(ObjectMapper smileMapper, JavaType valueType,
+                                                                           GenericJackson2JsonRedisSerializer legacySerializer) {
+        return RedisSerializationContext.SerializationPair.fromSerializer(new CacheValueSerializer(
+                smileMapper, valueType, legacySerializer, serializerCompressionThreshold, serializerCompressionLevel,
+                serializerMaxInflatedBytes));
+    }
 }
@@ -1,15 +1,39 @@
 package com.example.config;
 
+import com.example.codec.BinaryMessageCodec;
+import com.example.codec.CompressingMessageCodec;
+import com.example.codec.JsonMessageCodec;
+import com.example.codec.MessageCodec;
+import com.example.util.CircuitBreaker;
+import com.example.util.KeyedOrderedExecutor;
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.SocketOptions;
+import io.lettuce.core.TimeoutOptions;
+import io.lettuce.core.api.StatefulConnection;
+import io.lettuce.core.resource.ClientResources;
+import io.lettuce.core.resource.DefaultClientResources;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.task.SyncTaskExecutor;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisPassword;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnection;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import java.time.Duration;
+
 @Configuration
 public class RedisMessageConfig {
 
@@ -19,9 +43,156 @@ public class RedisMessageConfig {
     @Value("${spring.redis.port:6379}")
     private int redisPort;
 
+    @Value("${spring.redis.password:}")
+    private String redisPassword;
+
+    @Value("${spring.redis.timeout:2000ms}")
+    private Duration redisTimeout;
+
+    @Value("${spring.redis.lettuce.pool.max-active:8}")
+    private int poolMaxActive;
+
+    @Value("${spring.redis.lettuce.pool.max-idle:8}")
+    private int poolMaxIdle;
+
+    @Value("${spring.redis.lettuce.pool.min-idle:0}")
+    private int poolMinIdle;
+
+    @Value("${spring.redis.lettuce.pool.max-wait:-1ms}")
+    private Duration poolMaxWait;
+
+    // 0 表示使用Lettuce默认值（CPU核数）
+    @Value("${redis.lettuce.io-threads:0}")
+    private int ioThreads;
+
+    @Value("${redis.lettuce.computation-threads:0}")
+    private int computationThreads;
+
+    // 手动pipeline时累积多少条命令才写出一次，1 表示每条命令立即写出
+    @Value("${redis.lettuce.pipeline-flush-size:1}")
+    private int pipelineFlushSize;
+
+    @Value("${redis.message.blocking.max-wait-seconds:30}")
+    private int blockingMaxWaitSeconds;
+
+    @Value("${redis.message.codec:binary}")
+    private String messageCodecType;
+
+    // 编码后超过该大小的消息体压缩存储，0 表示不压缩
+    @Value("${redis.message.compression.threshold-bytes:4096}")
+    private int compressionThresholdBytes;
+
+    // Deflate压缩级别，1最快、9压缩率最高
+    @Value("${redis.message.compression.level:1}")
+    private int compressionLevel;
+
+    // 解压后消息体的上限，超过时按损坏数据处理
+    @Value("${redis.message.compression.max-inflated-bytes:16777216}")
+    private int maxInflatedBytes;
+
+    @Value("${redis.message.listener.lanes:4}")
+    private int listenerLanes;
+
+    @Value("${redis.message.listener.queue-capacity:1000}")
+    private int listenerQueueCapacity;
+
+    @Value("${redis.message.circuit.failure-threshold:5}")
+    private int circuitFailureThreshold;
+
+    @Value("${redis.message.circuit.slow-call-ms:500}")
+    private long circuitSlowCallMillis;
+
+    @Value("${redis.message.circuit.open-ms:5000}")
+    private long circuitOpenMillis;
+
+    /**
+     * Lettuce共享的事件循环与计算线程
+     * 两个连接工厂共用，关闭应用时统一释放
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ClientResources lettuceClientResources() {
+        DefaultClientResources.Builder builder = DefaultClientResources.builder();
+        if (ioThreads > 0) {
+            builder.ioThreadPoolSize(ioThreads);
+        }
+        if (computationThreads > 0) {
+            builder.computationThreadPoolSize(computationThreads);
+        }
+        return builder.build();
+    }
+
+    /**
+     * 主连接工厂
+     * 普通命令共享一条多路复用的原生连接；事务、阻塞命令等需要独占连接时从连接池借用
+     */
     @Bean
+    @Primary
     public RedisConnectionFactory redisConnectionFactory() {
-        return new LettuceConnectionFactory(redisHost, redisPort);
+        LettuceClientConfiguration clientConfig = LettucePoolingClientConfiguration.builder()
+                .poolConfig(poolConfig())
+                .clientResources(lettuceClientResources())
+                .clientOptions(clientOptions())
+                .commandTimeout(redisTimeout)
+                .build();
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(standaloneConfiguration(), clientConfig);
+        factory.setShareNativeConnection(true);
+        if (pipelineFlushSize > 1) {
+            factory.setPipeliningFlushPolicy(LettuceConnection.PipeliningFlushPolicy.buffered(pipelineFlushSize));
+        }
+        return factory;
+    }
+
+    /**
+     * 阻塞命令（BRPOP）专用连接工厂
+     * 不共享原生连接，每次调用从独立的连接池借用一条连接，阻塞等待不会拖慢主连接上的其他命令；
+     * 命令超时需大于最长阻塞时间
+     */
+    @Bean
+    public RedisConnectionFactory blockingRedisConnectionFactory() {
+        LettuceClientConfiguration clientConfig = LettucePoolingClientConfiguration.builder()
+                .poolConfig(poolConfig())
+                .clientResources(lettuceClientResources())
+                .clientOptions(clientOptions())
+                .commandTimeout(redisTimeout.plusSeconds(blockingMaxWaitSeconds))
+                .build();
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(standaloneConfiguration(), clientConfig);
+        factory.setShareNativeConnection(false);
+        return factory;
+    }
+
+    /**
+     * 阻塞弹出使用的模板
+     */
+    @Bean
+    public StringRedisTemplate blockingRedisTemplate() {
+        return new StringRedisTemplate(blockingRedisConnectionFactory());
+    }
+
+    private RedisStandaloneConfiguration standaloneConfiguration() {
+        RedisStandaloneConfiguration config = new RedisStandaloneConfiguration(redisHost, redisPort);
+        if (redisPassword != null && !redisPassword.isEmpty()) {
+            config.setPassword(RedisPassword.of(redisPassword));
+        }
+        return config;
+    }
+
+    private ClientOptions clientOptions() {
+        return ClientOptions.builder()
+                .autoReconnect(true)
+                // 断线期间直接拒绝命令，由调用方（熔断器）处理，而不是在内存中无限堆积
+                .disconnectedBehavior(ClientOptions.DisconnectedBehavior.REJECT_COMMANDS)
+                .socketOptions(SocketOptions.builder().connectTimeout(redisTimeout).keepAlive(true).build())
+                .timeoutOptions(TimeoutOptions.enabled())
+                .build();
+    }
+
+    private GenericObjectPoolConfig<StatefulConnection<?, ?>> poolConfig() {
+        GenericObjectPoolConfig<StatefulConnection<?, ?>> config = new GenericObjectPoolConfig<>();
+        config.setMaxTotal(poolMaxActive);
+        config.setMaxIdle(poolMaxIdle);
+        config.setMinIdle(poolMinIdle);
+        config.setMaxWait(poolMaxWait);
+        return config;
     }
 
     @Bean
@@ -41,14 +212,70 @@ public class RedisMessageConfig {
         return template;
     }
 
+    /**
+     * 字符串模板
+     * 用于队列和用户消息列表中存放的消息ID
+     */
+    @Bean
+    @Primary
+    public StringRedisTemplate stringRedisTemplate() {
+        return new StringRedisTemplate(redisConnectionFactory());
+    }
+
+    /**
+     * 消息体模板
+     * value直接读写字节数组，编码由MessageCodec负责
+     */
+    @Bean
+    public RedisTemplate<String, byte[]> messageRedisTemplate() {
+        RedisTemplate<String, byte[]> template = new RedisTemplate<>();
+        template.setConnectionFactory(redisConnectionFactory());
+        template.setKeySerializer(new StringRedisSerializer());
+        template.setValueSerializer(RedisSerializer.byteArray());
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    /**
+     * 消息编解码器
+     * redis.message.codec=binary（默认，紧凑二进制）或 json（便于排查）；
+     * 外层统一按大小阈值压缩，解码时自动识别是否压缩
+     */
+    @Bean
+    public MessageCodec messageCodec() {
+        MessageCodec codec = "json".equalsIgnoreCase(messageCodecType) ? new JsonMessageCodec() : new BinaryMessageCodec();
+        return new CompressingMessageCodec(codec, compressionThresholdBytes, compressionLevel, maxInflatedBytes);
+    }
+
+    /**
+     * 发布订阅消息处理线程池
+     * 同一频道的消息按顺序处理，不同频道并行；队列有界，积压时拒绝新消息而不阻塞订阅线程
+     */
+    @Bean(destroyMethod = "shutdown")
+    public KeyedOrderedExecutor messageListenerExecutor() {
+        return new KeyedOrderedExecutor("RedisListener-", listenerLanes, listenerQueueCapacity);
+    }
+
+    /**
+     * 生产者写Redis的熔断器
+     * 熔断期间消息写入本地缓冲（MessageSpillBuffer），恢复后再重放
+     */
+    @Bean
+    public CircuitBreaker redisCircuitBreaker() {
+        return new CircuitBreaker("redis-producer", circuitFailureThreshold, circuitSlowCallMillis, circuitOpenMillis);
+    }
+
     /**
      * Redis消息监听容器
      * 用于监听Redis的发布/订阅消息
+     * 容器直接在订阅线程（Lettuce的I/O线程）上分发，由监听器自行交给messageListenerExecutor，
+     * 避免默认的SimpleAsyncTaskExecutor为每条消息新建线程且无法保证顺序；监听器中不允许阻塞
      */
     @Bean
     public RedisMessageListenerContainer redisMessageListenerContainer() {
         RedisMessageListenerContainer container = new RedisMessageListenerContainer();
         container.setConnectionFactory(redisConnectionFactory());
+        container.setTaskExecutor(new SyncTaskExecutor());
         return container;
     }
 } 
\ No newline at end of file
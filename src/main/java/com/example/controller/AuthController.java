@@ -47,13 +47,11 @@ public class AuthController {
             
             UserPrincipal userDetails = (UserPrincipal) authentication.getPrincipal();
             
-            userService.getUserByEmail(loginRequest.getEmail()).get();
-
             return ResponseEntity.ok(new JwtResponse(jwt,
                     userDetails.getId(),
                     userDetails.getUsername(),
                     userDetails.getName(),
-                    userService.getUserById(userDetails.getId()).get().getRoles()));
+                    userService.getUserByEmail(loginRequest.getEmail()).get().getRoles()));
         } catch (Exception e) {
             Map<String, String> error = new HashMap<>();
             error.put("error", "登录失败");
@@ -1,19 +1,22 @@
 package com.example.controller;
 
+import com.example.dto.UserIdPage;
+import com.example.dto.UserSummary;
 import com.example.entity.User;
 import com.example.repository.UserRepository;
+import com.example.service.CacheIntrospectionService;
+import com.example.service.CacheWarmupService;
+import com.example.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
 
 /**
  * 缓存测试控制器
@@ -25,15 +28,21 @@ public class CacheTestController {
 
     @Autowired
     private UserRepository userRepository;
+
+    @Autowired
+    private UserService userService;
     
     @Autowired
     private CacheManager cacheManager;
     
     @Autowired
-    private RedisTemplate<String, Object> redisTemplate;
+    private CacheIntrospectionService cacheIntrospectionService;
+
+    @Autowired
+    private CacheWarmupService cacheWarmupService;
 
     /**
-     * 测试用户邮箱缓存（使用Repository中的缓存）
+     * 测试用户邮箱缓存（使用UserService中的缓存）
      * 第一次查询会从数据库获取并缓存到Redis
      * 后续查询直接从Redis获取
      */
@@ -41,7 +50,7 @@ public class CacheTestController {
     public Map<String, Object> getUserByEmail(@PathVariable String email) {
         long startTime = System.currentTimeMillis();
         
-        Optional<User> user = userRepository.findByEmail(email);
+        Optional<UserSummary> user = userService.getUserByEmail(email);
         
         long endTime = System.currentTimeMillis();
         
@@ -57,7 +66,7 @@ public class CacheTestController {
      * 缓存所有用户列表
      */
     @GetMapping("/users")
-    @Cacheable(value = "userList", key = "'all'")
+    @Cacheable(value = "userList", key = "'all'", sync = true)
     public Map<String, Object> getAllUsers() {
         long startTime = System.currentTimeMillis();
         
@@ -76,13 +85,14 @@ public class CacheTestController {
 
     /**
      * 缓存用户搜索结果
+     * 缓存中只保存匹配的用户ID，用户数据按ID从userDetails缓存批量取出
      */
     @GetMapping("/users/search")
-    @Cacheable(value = "userSearch", key = "#keyword")
     public Map<String, Object> searchUsers(@RequestParam String keyword) {
         long startTime = System.currentTimeMillis();
         
-        List<User> users = userRepository.searchByKeyword(keyword);
+        UserIdPage ids = userService.searchUserIds(keyword);
+        List<UserSummary> users = userService.getUserSummaries(ids.getIds());
         
         long endTime = System.currentTimeMillis();
         
@@ -95,6 +105,29 @@ public class CacheTestController {
         return result;
     }
 
+    /**
+     * 缓存用户分页结果
+     * 缓存中只保存当前页的用户ID和总数
+     */
+    @GetMapping("/users/page")
+    public Map<String, Object> getUserPage(@RequestParam(defaultValue = "0") int page,
+                                           @RequestParam(defaultValue = "10") int size) {
+        long startTime = System.currentTimeMillis();
+        
+        UserIdPage ids = userService.findUserIdPage(Math.max(page, 0), Math.max(1, Math.min(size, 100)));
+        List<UserSummary> users = userService.getUserSummaries(ids.getIds());
+        
+        long endTime = System.currentTimeMillis();
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("users", users);
+        result.put("page", page);
+        result.put("total", ids.getTotal());
+        result.put("queryTime", endTime - startTime + "ms");
+        
+        return result;
+    }
+
     /**
      * 清除特定用户的邮箱缓存
      */
@@ -121,14 +154,13 @@ public class CacheTestController {
 
     /**
      * 查看Redis中的缓存键
+     * 按游标分页，首页cursor传0，之后传上一页返回的nextCursor，直到finished为true
      */
     @GetMapping("/redis/keys")
-    public Map<String, Object> getRedisKeys() {
-        Set<String> keys = redisTemplate.keys("*");
-        
-        Map<String, Object> result = new HashMap<>();
-        result.put("totalKeys", keys != null ? keys.size() : 0);
-        result.put("keys", keys);
+    public Map<String, Object> getRedisKeys(@RequestParam(defaultValue = "*") String pattern,
+                                            @RequestParam(defaultValue = "0") String cursor,
+                                            @RequestParam(defaultValue = "100") int size) {
+        Map<String, Object> result = cacheIntrospectionService.scanKeys(pattern, cursor, size);
         result.put("cacheNames", cacheManager.getCacheNames());
         
         return result;
@@ -139,56 +171,31 @@ public class CacheTestController {
      */
     @GetMapping("/stats")
     public Map<String, Object> getCacheStats() {
-        Map<String, Object> stats = new HashMap<>();
-        
-        // 获取所有缓存名称
-        stats.put("availableCaches", cacheManager.getCacheNames());
-        
-        // 获取Redis键统计
-        Set<String> allKeys = redisTemplate.keys("*");
-        stats.put("totalRedisKeys", allKeys != null ? allKeys.size() : 0);
-        
-        // 按前缀分组统计
-        Map<String, Integer> keysByPrefix = new HashMap<>();
-        if (allKeys != null) {
-            for (String key : allKeys) {
-                String prefix = key.split("::")[0];
-                keysByPrefix.merge(prefix, 1, Integer::sum);
-            }
-        }
-        stats.put("keysByPrefix", keysByPrefix);
-        
-        return stats;
+        // 条目数来自增量维护的索引，不扫描Redis
+        return cacheIntrospectionService.getStats();
     }
 
     /**
      * 手动预热缓存
+     * 在后台执行，进度通过 GET /api/cache/warmup 查看
      */
     @PostMapping("/warmup")
     public Map<String, Object> warmupCache() {
-        long startTime = System.currentTimeMillis();
-        
-        // 预热用户列表缓存
-        getAllUsers();
-        
-        // 预热一些常用的用户邮箱缓存
-        List<User> users = userRepository.findAll();
-        int warmedUp = 0;
-        for (User user : users.subList(0, Math.min(10, users.size()))) {
-            if (user.getEmail() != null) {
-                userRepository.findByEmail(user.getEmail());
-                warmedUp++;
-            }
-        }
-        
-        long endTime = System.currentTimeMillis();
+        boolean started = cacheWarmupService.startAsync();
         
         Map<String, Object> result = new HashMap<>();
-        result.put("message", "缓存预热完成");
-        result.put("warmedUpUsers", warmedUp);
-        result.put("totalTime", (endTime - startTime) + "ms");
-        result.put("status", "success");
+        result.put("message", started ? "缓存预热已开始" : "缓存预热正在进行中");
+        result.put("status", started ? "success" : "running");
+        result.put("progress", cacheWarmupService.getStatus());
         
         return result;
     }
+
+    /**
+     * 查看缓存预热进度
+     */
+    @GetMapping("/warmup")
+    public Map<String, Object> getWarmupStatus() {
+        return cacheWarmupService.getStatus();
+    }
 }
@@ -1,12 +1,15 @@
 package com.example.controller;
 
 import com.example.dto.MessageDTO;
+import com.example.dto.MessagePriority;
 import com.example.service.RedisMessageService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import jakarta.servlet.http.HttpServletRequest;
+
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -21,13 +24,15 @@ public class RedisMessageController {
 
     /**
      * 发送用户消息到Redis队列
+     * 可通过请求头 Idempotency-Key 传入幂等键，客户端超时重试时不会重复发送
      */
     @PostMapping("/user")
     @PreAuthorize("hasRole('ADMIN') or hasRole('USER')")
     public ResponseEntity<?> sendUserMessage(@RequestParam String receiver, 
-                                           @RequestParam String content) {
+                                           @RequestParam String content,
+                                           @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         try {
-            String messageId = redisMessageService.sendUserMessage(receiver, content);
+            String messageId = redisMessageService.sendUserMessage(receiver, content, idempotencyKey);
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
@@ -47,17 +52,20 @@ public class RedisMessageController {
 
     /**
      * 发送通知消息（发布订阅模式）
+     * 支持 Idempotency-Key 请求头
      */
     @PostMapping("/notification")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<?> sendNotification(@RequestParam String receiver, 
-                                            @RequestParam String content) {
+                                            @RequestParam String content,
+                                            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         try {
-            redisMessageService.sendNotification(receiver, content);
+            String messageId = redisMessageService.sendNotification(receiver, content, idempotencyKey);
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
             response.put("message", "通知消息发送成功");
+            response.put("messageId", messageId);
             response.put("receiver", receiver);
             
             return ResponseEntity.ok(response);
@@ -188,7 +196,7 @@ public class RedisMessageController {
     public ResponseEntity<?> getUserMessages(@PathVariable String userId, 
                                            @RequestParam(defaultValue = "10") int limit) {
         try {
-            List<Object> messageIds = redisMessageService.getUserMessages(userId, limit);
+            List<String> messageIds = redisMessageService.getUserMessages(userId, limit);
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
@@ -206,6 +214,32 @@ public class RedisMessageController {
         }
     }
 
+    /**
+     * 分页获取用户收件箱
+     * 直接返回完整消息（可附带状态），cursor为上一页返回的nextCursor
+     */
+    @GetMapping("/inbox/{userId}")
+    @PreAuthorize("hasRole('ADMIN') or (#userId == authentication.name)")
+    public ResponseEntity<?> getUserInbox(@PathVariable String userId,
+                                        @RequestParam(required = false) String cursor,
+                                        @RequestParam(defaultValue = "20") int limit,
+                                        @RequestParam(defaultValue = "true") boolean includeStatus) {
+        try {
+            Map<String, Object> page = redisMessageService.getUserInbox(userId, cursor, limit, includeStatus);
+            
+            Map<String, Object> response = new HashMap<>(page);
+            response.put("success", true);
+            
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "获取收件箱失败: " + e.getMessage());
+            
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
     /**
      * 获取消息状态
      */
@@ -232,13 +266,16 @@ public class RedisMessageController {
 
     /**
      * 发送自定义消息到指定队列
+     * priority（HIGH/NORMAL/LOW）不传时按消息类型决定；支持 Idempotency-Key 请求头
      */
     @PostMapping("/custom/{queueName}")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<?> sendCustomMessage(@PathVariable String queueName,
+                                             @RequestParam(required = false) MessagePriority priority,
+                                             @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
                                              @RequestBody MessageDTO message) {
         try {
-            String messageId = redisMessageService.sendToQueue(queueName, message);
+            String messageId = redisMessageService.sendToQueue(queueName, message, priority, idempotencyKey);
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
@@ -256,20 +293,85 @@ public class RedisMessageController {
         }
     }
 
+    /**
+     * 批量发送自定义消息到指定队列
+     * 请求体为MessageDTO的JSON数组，服务端边解析边分块发送，适合大批量导入
+     */
+    @PostMapping("/custom/{queueName}/batch")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> sendCustomMessageBatch(@PathVariable String queueName,
+                                                  HttpServletRequest request) {
+        try {
+            int count = redisMessageService.sendBatch(queueName, request.getInputStream());
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("message", "批量消息发送成功");
+            response.put("queueName", queueName);
+            response.put("count", count);
+            
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "批量消息发送失败: " + e.getMessage());
+            
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    /**
+     * 延迟发送自定义消息到指定队列
+     * delayMs（延迟毫秒数）与 deliverAt（投递时间的毫秒时间戳）二选一；支持 Idempotency-Key 请求头
+     */
+    @PostMapping("/custom/{queueName}/delayed")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> sendDelayedMessage(@PathVariable String queueName,
+                                              @RequestParam(required = false) Long delayMs,
+                                              @RequestParam(required = false) Long deliverAt,
+                                              @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                                              @RequestBody MessageDTO message) {
+        try {
+            if (delayMs == null && deliverAt == null) {
+                throw new IllegalArgumentException("delayMs 和 deliverAt 必须指定一个");
+            }
+            long deliverAtMillis = deliverAt != null ? deliverAt : System.currentTimeMillis() + delayMs;
+            String messageId = redisMessageService.scheduleToQueue(queueName, message, deliverAtMillis, idempotencyKey);
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("message", "延迟消息登记成功");
+            response.put("queueName", queueName);
+            response.put("messageId", messageId);
+            response.put("deliverAt", deliverAtMillis);
+            
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "延迟消息发送失败: " + e.getMessage());
+            
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
     /**
      * 发布消息到Redis频道
+     * 支持 Idempotency-Key 请求头
      */
     @PostMapping("/publish/{channel}")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<?> publishMessage(@PathVariable String channel,
+                                          @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
                                           @RequestBody MessageDTO message) {
         try {
-            redisMessageService.publishMessage(channel, message);
+            String messageId = redisMessageService.publishMessage(channel, message, idempotencyKey);
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
             response.put("message", "消息发布成功");
             response.put("channel", channel);
+            response.put("messageId", messageId);
             
             return ResponseEntity.ok(response);
         } catch (Exception e) {
@@ -280,4 +382,31 @@ public class RedisMessageController {
             return ResponseEntity.badRequest().body(response);
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * 批量发布消息到Redis频道
+     */
+    @PostMapping("/publish/{channel}/batch")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> publishMessageBatch(@PathVariable String channel,
+                                               @RequestBody List<MessageDTO> messages) {
+        try {
+            List<String> messageIds = redisMessageService.publishBatch(channel, messages);
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("message", "批量消息发布成功");
+            response.put("channel", channel);
+            response.put("messageIds", messageIds);
+            response.put("count", messageIds.size());
+            
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "批量消息发布失败: " + e.getMessage());
+            
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+}
@@ -14,6 +14,9 @@ public class MessageDTO {
     @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
     private LocalDateTime timestamp;
     
+    // 消息有效期（秒），从timestamp开始计算（延迟消息的timestamp为投递时间），超时未被消费的消息会被丢弃；为空表示使用默认有效期
+    private Long ttlSeconds;
+    
     public MessageDTO() {
         this.timestamp = LocalDateTime.now();
     }
@@ -74,6 +77,14 @@ public class MessageDTO {
         this.timestamp = timestamp;
     }
     
+    public Long getTtlSeconds() {
+        return ttlSeconds;
+    }
+    
+    public void setTtlSeconds(Long ttlSeconds) {
+        this.ttlSeconds = ttlSeconds;
+    }
+    
     @Override
     public String toString() {
         return "MessageDTO{" +
@@ -83,6 +94,7 @@ public class MessageDTO {
                 ", receiver='" + receiver + '\'' +
                 ", type='" + type + '\'' +
                 ", timestamp=" + timestamp +
+                ", ttlSeconds=" + ttlSeconds +
                 '}';
     }
 } 
\ No newline at end of file
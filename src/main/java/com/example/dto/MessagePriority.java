@@ -0,0 +1,44 @@
+package com.example.dto;
+
+/**
+ * 队列消息优先级
+ * 每个优先级对应一个独立的子队列，消费时按权重轮询，高优先级优先但低优先级不会饿死
+ */
+public enum MessagePriority {
+
+    HIGH(":high", 6),
+    NORMAL("", 3),
+    LOW(":low", 1);
+
+    private final String queueSuffix;
+    private final int weight;
+
+    MessagePriority(String queueSuffix, int weight) {
+        this.queueSuffix = queueSuffix;
+        this.weight = weight;
+    }
+
+    /**
+     * 该优先级在Redis中对应的列表key，NORMAL沿用原队列名
+     */
+    public String queueKey(String queueName) {
+        return queueName + queueSuffix;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * 根据消息类型确定默认优先级：用户消息优先，批量通知靠后
+     */
+    public static MessagePriority forType(String type) {
+        if ("USER_MESSAGE".equals(type)) {
+            return HIGH;
+        }
+        if ("NOTIFICATION".equals(type)) {
+            return LOW;
+        }
+        return NORMAL;
+    }
+}
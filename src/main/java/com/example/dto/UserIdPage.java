@@ -0,0 +1,29 @@
+package com.example.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 搜索/分页结果的缓存形式
+ * 只保存有序的用户ID和总数，用户数据按ID从userDetails缓存批量取出
+ */
+public class UserIdPage {
+
+    private List<Long> ids = new ArrayList<>();
+    private long total;
+
+    public UserIdPage() {}
+
+    public UserIdPage(List<Long> ids, long total) {
+        this.ids = ids;
+        this.total = total;
+    }
+
+    public List<Long> getIds() {
+        return ids;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+}
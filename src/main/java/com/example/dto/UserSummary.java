@@ -0,0 +1,80 @@
+package com.example.dto;
+
+import com.example.entity.Permission;
+import com.example.entity.User;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 用户缓存视图
+ * 缓存中只保存这里的字段，不包含密码哈希；权限只保留名称
+ */
+public class UserSummary {
+
+    private Long id;
+    private String name;
+    private String email;
+    private String phone;
+    private Set<User.Role> roles = new HashSet<>();
+    private Set<String> permissions = new HashSet<>();
+    private boolean enabled;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+
+    public UserSummary() {}
+
+    public static UserSummary from(User user) {
+        UserSummary summary = new UserSummary();
+        summary.id = user.getId();
+        summary.name = user.getName();
+        summary.email = user.getEmail();
+        summary.phone = user.getPhone();
+        summary.roles = new HashSet<>(user.getRoles());
+        for (Permission permission : user.getPermissions()) {
+            summary.permissions.add(permission.getName());
+        }
+        summary.enabled = user.isEnabled();
+        summary.createdAt = user.getCreatedAt();
+        summary.updatedAt = user.getUpdatedAt();
+        return summary;
+    }
+
+    // Getter方法
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getPhone() {
+        return phone;
+    }
+
+    public Set<User.Role> getRoles() {
+        return roles;
+    }
+
+    public Set<String> getPermissions() {
+        return permissions;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+}
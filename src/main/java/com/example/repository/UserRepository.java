@@ -2,7 +2,8 @@ package com.example.repository;
 
 import com.example.entity.User;
 
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
@@ -16,14 +17,11 @@ import java.util.Optional;
 @Repository
 public interface UserRepository extends JpaRepository<User, Long>, JpaSpecificationExecutor<User>, CustomUserRepository {
     
-    // 根据邮箱查找用户 - 用于认证，不缓存
+    // 根据邮箱查找用户 - 用于认证，不缓存；需要缓存的查询使用UserService.getUserByEmail
     Optional<User> findByEmail(String email);
     
-    // 根据邮箱查找用户 - 用于其他查询，可缓存
-    // @Cacheable("findUsersByEmail")
-    default Optional<User> findByEmailCached(String email) {
-        return findByEmail(email);
-    }
+    // 按ID顺序分页读取（键集分页），用于缓存预热
+    List<User> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
     
     // 根据邮箱检查用户是否存在
     boolean existsByEmail(String email);
@@ -45,6 +43,14 @@ public interface UserRepository extends JpaRepository<User, Long>, JpaSpecificat
     @Query("SELECT u FROM User u WHERE u.name LIKE %:keyword% OR u.email LIKE %:keyword%")
     List<User> searchByKeyword(@Param("keyword") String keyword);
     
+    // 根据关键词搜索用户ID，按ID排序，用于缓存搜索结果
+    @Query("SELECT u.id FROM User u WHERE u.name LIKE %:keyword% OR u.email LIKE %:keyword% ORDER BY u.id")
+    List<Long> searchIdsByKeyword(@Param("keyword") String keyword);
+    
+    // 分页查询用户ID，用于缓存分页结果
+    @Query(value = "SELECT u.id FROM User u", countQuery = "SELECT COUNT(u) FROM User u")
+    Page<Long> findAllIds(Pageable pageable);
+    
     // 根据时间范围查询用户
     @Query("SELECT u FROM User u WHERE (:startTime IS NULL OR u.createdAt >= :startTime) " +
            "AND (:endTime IS NULL OR u.createdAt <= :endTime)")
@@ -0,0 +1,137 @@
+package com.example.service;
+
+import com.example.cache.CacheKeyIndex;
+import com.example.cache.TwoLevelCache;
+import com.example.cache.TwoLevelCacheManager;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.cache.CacheStatistics;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 缓存内查
+ * 列出key使用游标分页的SCAN，每次请求只做有限次迭代，不会像 KEYS * 一样长时间阻塞Redis；
+ * 各缓存条目数来自增量维护的CacheKeyIndex，Redis总key数使用O(1)的DBSIZE；
+ * 命中率为本节点的统计，集群维度请看actuator的metrics端点
+ */
+@Service
+public class CacheIntrospectionService {
+
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    // 单次请求最多迭代的SCAN次数，匹配稀疏时返回不足一页的结果和新游标
+    private static final int MAX_SCAN_ROUNDS = 10;
+
+    // 每次执行一次SCAN，工作量受COUNT限制；返回 [游标, [key...]]
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> SCAN_SCRIPT = new DefaultRedisScript<>(
+            "return redis.call('SCAN', ARGV[1], 'MATCH', ARGV[2], 'COUNT', ARGV[3])", List.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private CacheKeyIndex cacheKeyIndex;
+
+    /**
+     * 按游标分页列出key
+     *
+     * @param pattern 匹配模式，如 user::*
+     * @param cursor  上一页返回的nextCursor，首页传 0
+     * @param size    每页期望的key数量（COUNT提示），最大 MAX_PAGE_SIZE
+     * @return keys、nextCursor（为 0 表示已遍历完）和finished
+     */
+    public Map<String, Object> scanKeys(String pattern, String cursor, int size) {
+        int count = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        List<String> keys = new ArrayList<>();
+        String next = cursor;
+        int rounds = 0;
+        do {
+            List<?> reply = stringRedisTemplate.execute(SCAN_SCRIPT, Collections.emptyList(),
+                    next, pattern, String.valueOf(count));
+            next = String.valueOf(reply.get(0));
+            for (Object key : (List<?>) reply.get(1)) {
+                keys.add(String.valueOf(key));
+            }
+            rounds++;
+        } while (!"0".equals(next) && keys.size() < count && rounds < MAX_SCAN_ROUNDS);
+
+        Map<String, Object> page = new HashMap<>();
+        page.put("keys", keys);
+        page.put("count", keys.size());
+        page.put("nextCursor", next);
+        page.put("finished", "0".equals(next));
+        return page;
+    }
+
+    /**
+     * 缓存统计：各缓存在Redis中的条目数、本地L1条目数以及Redis总key数
+     */
+    public Map<String, Object> getStats() {
+        List<String> cacheNames = new ArrayList<>(cacheManager.getCacheNames());
+        Collections.sort(cacheNames);
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("availableCaches", cacheNames);
+        stats.put("totalRedisKeys", stringRedisTemplate.execute((RedisCallback<Long>) connection ->
+                connection.serverCommands().dbSize()));
+        stats.put("keysByCache", cacheKeyIndex.counts(cacheNames));
+
+        if (cacheManager instanceof TwoLevelCacheManager) {
+            Map<String, Long> localSizes = new LinkedHashMap<>();
+            Map<String, Object> hitStats = new LinkedHashMap<>();
+            for (String name : cacheNames) {
+                TwoLevelCache cache = ((TwoLevelCacheManager) cacheManager).getTwoLevelCache(name);
+                if (cache != null) {
+                    localSizes.put(name, cache.getLocalCache().estimatedSize());
+                    hitStats.put(name, hitStats(cache));
+                }
+            }
+            stats.put("localKeysByCache", localSizes);
+            stats.put("hitStats", hitStats);
+        }
+        return stats;
+    }
+
+    /**
+     * 本节点启动以来的命中统计，L1来自Caffeine，L2来自RedisCache
+     */
+    private Map<String, Object> hitStats(TwoLevelCache cache) {
+        CacheStats local = cache.getLocalCache().stats();
+        Map<String, Object> l1 = new LinkedHashMap<>();
+        l1.put("hits", local.hitCount());
+        l1.put("misses", local.missCount());
+        l1.put("hitRate", local.hitRate());
+        l1.put("evictions", local.evictionCount());
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("l1", l1);
+        if (cache.getRemoteCache() instanceof RedisCache) {
+            CacheStatistics remote = ((RedisCache) cache.getRemoteCache()).getStatistics();
+            long retrievals = remote.getHits() + remote.getMisses();
+            Map<String, Object> l2 = new LinkedHashMap<>();
+            l2.put("hits", remote.getHits());
+            l2.put("misses", remote.getMisses());
+            l2.put("hitRate", retrievals > 0 ? (double) remote.getHits() / retrievals : 1.0);
+            l2.put("puts", remote.getPuts());
+            l2.put("deletes", remote.getDeletes());
+            result.put("l2", l2);
+        }
+        return result;
+    }
+}
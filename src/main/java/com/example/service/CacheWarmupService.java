@@ -0,0 +1,188 @@
+package com.example.service;
+
+import com.example.cache.CacheWarmer;
+import com.example.cache.TwoLevelCache;
+import com.example.cache.TwoLevelCacheManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.cache.CacheManager;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 缓存预热
+ * 依次执行所有CacheWarmer：按页读取数据，每页并行序列化后用一个pipeline写入Redis（带各缓存的过期时间）。
+ * 只写入Redis中还没有的key，已有的值（可能是预热读取之后更新的）保持不变，预热不会把旧数据写回缓存。
+ * 启动时在CommandLineRunner中同步执行，应用在预热完成后才进入就绪状态；也可以通过接口按需异步触发。
+ * 同一时间只有一次预热在执行，进度按缓存记录
+ */
+@Service
+@Order(Ordered.LOWEST_PRECEDENCE - 1) // 须在会阻塞的NettyWebSocketServer之前执行
+public class CacheWarmupService implements CommandLineRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheWarmupService.class);
+
+    @Autowired(required = false)
+    private List<CacheWarmer> warmers = Collections.emptyList();
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    @Qualifier("taskExecutor")
+    private Executor taskExecutor;
+
+    @Value("${cache.warmup.on-startup:true}")
+    private boolean warmupOnStartup;
+
+    @Value("${cache.warmup.page-size:500}")
+    private int pageSize;
+
+    // 每个缓存最多预热的条目数，0表示不限制
+    @Value("${cache.warmup.max-entries:10000}")
+    private long maxEntries;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    // 缓存名 -> 最近一次预热的进度
+    private final Map<String, WarmupProgress> progress = new ConcurrentHashMap<>();
+
+    private static class WarmupProgress {
+        private final String trigger;
+        private final long startedAt = System.currentTimeMillis();
+        private final AtomicLong pages = new AtomicLong();
+        private final AtomicLong entries = new AtomicLong();
+        private final AtomicLong written = new AtomicLong();
+        private volatile String status = "RUNNING";
+        private volatile long finishedAt;
+        private volatile String error;
+
+        WarmupProgress(String trigger) {
+            this.trigger = trigger;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("status", status);
+            map.put("trigger", trigger);
+            map.put("pages", pages.get());
+            map.put("entries", entries.get());
+            map.put("written", written.get());
+            map.put("startedAt", startedAt);
+            map.put("elapsedMs", (finishedAt > 0 ? finishedAt : System.currentTimeMillis()) - startedAt);
+            if (error != null) {
+                map.put("error", error);
+            }
+            return map;
+        }
+    }
+
+    @Override
+    public void run(String... args) {
+        if (!warmupOnStartup || warmers.isEmpty()) {
+            return;
+        }
+        if (running.compareAndSet(false, true)) {
+            try {
+                warmAll("startup");
+            } finally {
+                running.set(false);
+            }
+        }
+    }
+
+    /**
+     * 在后台线程中预热所有缓存
+     *
+     * @return 已有预热在执行时返回false
+     */
+    public boolean startAsync() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            taskExecutor.execute(() -> {
+                try {
+                    warmAll("manual");
+                } finally {
+                    running.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+        return true;
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> caches = new LinkedHashMap<>();
+        for (CacheWarmer warmer : warmers) {
+            WarmupProgress p = progress.get(warmer.getCacheName());
+            caches.put(warmer.getCacheName(), p != null ? p.toMap() : Collections.singletonMap("status", "PENDING"));
+        }
+        Map<String, Object> status = new HashMap<>();
+        status.put("running", running.get());
+        status.put("caches", caches);
+        return status;
+    }
+
+    private void warmAll(String trigger) {
+        long start = System.currentTimeMillis();
+        long total = 0;
+        for (CacheWarmer warmer : new ArrayList<>(warmers)) {
+            total += warm(warmer, trigger);
+        }
+        logger.info("缓存预热完成({}): {} 个缓存, 读取 {} 条, 耗时 {}ms",
+                trigger, warmers.size(), total, System.currentTimeMillis() - start);
+    }
+
+    private long warm(CacheWarmer warmer, String trigger) {
+        String cacheName = warmer.getCacheName();
+        WarmupProgress p = new WarmupProgress(trigger);
+        progress.put(cacheName, p);
+
+        TwoLevelCache cache = cacheManager instanceof TwoLevelCacheManager
+                ? ((TwoLevelCacheManager) cacheManager).getTwoLevelCache(cacheName) : null;
+        if (cache == null) {
+            p.status = "SKIPPED";
+            p.error = "缓存不存在或不是两级缓存";
+            p.finishedAt = System.currentTimeMillis();
+            return 0;
+        }
+
+        try {
+            warmer.load(pageSize, page -> {
+                p.written.addAndGet(cache.warm(page));
+                p.entries.addAndGet(page.size());
+                p.pages.incrementAndGet();
+                return maxEntries <= 0 || p.entries.get() < maxEntries;
+            });
+            p.status = "DONE";
+        } catch (Exception e) {
+            // 预热失败不影响启动，缓存会在访问时按需加载
+            p.status = "FAILED";
+            p.error = e.getMessage();
+            logger.warn("缓存预热失败: {} - {}", cacheName, e.getMessage());
+        } finally {
+            p.finishedAt = System.currentTimeMillis();
+        }
+        return p.entries.get();
+    }
+}
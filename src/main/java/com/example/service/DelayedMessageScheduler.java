@@ -0,0 +1,137 @@
+package com.example.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 延迟消息调度
+ * 延迟消息以 "消息ID|目标队列" 为成员、到期时间为分数存入ZSET，
+ * 定时取出一批到期成员，再用Lua脚本把它们原子地移入目标队列
+ *
+ * 脚本访问的ZSET和所有目标队列都通过KEYS传入；脚本在一次调用中写多个key，
+ * 因此要求这些key位于同一个Redis节点（单机/主从/哨兵），Redis Cluster下需给队列名加相同的hash tag
+ */
+@Component
+public class DelayedMessageScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(DelayedMessageScheduler.class);
+
+    private static final String DELAYED_QUEUE = "queue:delayed";
+    private static final String MEMBER_SEPARATOR = "|";
+
+    // KEYS[1]为ZSET，KEYS[i+1]为ARGV[i]的目标队列；成员仍在ZSET中（未被其他节点移走）时才投递，返回被移动的成员
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> MOVE_DUE_SCRIPT = new DefaultRedisScript<>(
+            "local moved = {} " +
+            "for i, member in ipairs(ARGV) do " +
+            "  if redis.call('ZREM', KEYS[1], member) == 1 then " +
+            "    local sep = string.find(member, '|', 1, true) " +
+            "    redis.call('LPUSH', KEYS[i + 1], string.sub(member, 1, sep - 1)) " +
+            "    moved[#moved + 1] = member " +
+            "  end " +
+            "end " +
+            "return moved", List.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    @Value("${redis.message.delayed.tick-ms:200}")
+    private long tickMillis;
+
+    @Value("${redis.message.delayed.jitter-ms:50}")
+    private long jitterMillis;
+
+    @Value("${redis.message.delayed.batch-size:500}")
+    private int batchSize;
+
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        scheduleNextTick(tickMillis);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * 登记一条延迟消息，到期后投递到目标队列
+     */
+    public void schedule(String queueName, String messageId, long deliverAtMillis) {
+        stringRedisTemplate.opsForZSet().add(DELAYED_QUEUE, messageId + MEMBER_SEPARATOR + queueName, deliverAtMillis);
+    }
+
+    /**
+     * 待投递的延迟消息数量
+     */
+    public Long getPendingCount() {
+        return stringRedisTemplate.opsForZSet().size(DELAYED_QUEUE);
+    }
+
+    /**
+     * 移动一批到期消息，返回移动数量
+     */
+    @SuppressWarnings("unchecked")
+    public int moveDueMessages() {
+        Set<String> due = stringRedisTemplate.opsForZSet()
+                .rangeByScore(DELAYED_QUEUE, Double.NEGATIVE_INFINITY, System.currentTimeMillis(), 0, batchSize);
+        if (due == null || due.isEmpty()) {
+            return 0;
+        }
+        List<String> keys = new ArrayList<>(due.size() + 1);
+        keys.add(DELAYED_QUEUE);
+        for (String member : due) {
+            keys.add(member.substring(member.indexOf(MEMBER_SEPARATOR) + 1));
+        }
+        List<String> moved = stringRedisTemplate.execute(MOVE_DUE_SCRIPT, keys, due.toArray());
+        if (moved == null || moved.isEmpty()) {
+            return 0;
+        }
+        logger.debug("延迟消息已到期投递: {} 条", moved.size());
+        return moved.size();
+    }
+
+    private void tick() {
+        long nextDelay = tickMillis;
+        try {
+            // 本批取满说明还有积压，立即继续
+            if (moveDueMessages() >= batchSize) {
+                nextDelay = 0;
+            }
+        } catch (Exception e) {
+            logger.warn("投递延迟消息失败: {}", e.getMessage());
+        }
+        scheduleNextTick(nextDelay);
+    }
+
+    /**
+     * 加入随机抖动，避免多个节点在同一时刻执行脚本
+     */
+    private void scheduleNextTick(long delayMillis) {
+        if (!running) {
+            return;
+        }
+        long jitter = delayMillis > 0 && jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0;
+        taskScheduler.schedule(this::tick, Instant.now().plusMillis(delayMillis + jitter));
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.service;
+
+import com.example.util.CircuitBreaker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+
+/**
+ * 生产者幂等键登记
+ * 每个幂等键对应一个带过期时间的 idempotency:{范围}:{键} -> 消息ID，用 SET NX 原子登记，
+ * 查重为O(1)，内存占用随过期时间自动回收。
+ *
+ * 与生产者写Redis共用同一个熔断器：熔断期间不再等待命令超时，直接拒绝带幂等键的发送（失败关闭）。
+ * 本地缓冲只能保存消息，无法登记幂等键，此时放行会让客户端重试产生重复消息；不带幂等键的发送不受影响
+ */
+@Component
+public class MessageDeduplicator {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageDeduplicator.class);
+
+    private static final String IDEMPOTENCY_PREFIX = "idempotency:";
+    private static final int MAX_KEY_LENGTH = 128;
+
+    // 登记成功返回空，键已存在时返回其中记录的消息ID
+    private static final DefaultRedisScript<String> CLAIM_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('SET', KEYS[1], ARGV[1], 'NX', 'EX', ARGV[2]) then return false end " +
+            "return redis.call('GET', KEYS[1])", String.class);
+
+    // 只删除自己登记的键，避免误删过期后被其他请求重新登记的键
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end " +
+            "return 0", Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private CircuitBreaker redisCircuitBreaker;
+
+    @Value("${redis.message.idempotency.ttl-seconds:86400}")
+    private long ttlSeconds;
+
+    /**
+     * 把幂等键登记到messageId上
+     *
+     * @return 空表示首次登记（调用方应继续发送）；否则为该键已对应的消息ID
+     * @throws IllegalStateException Redis不可用或已熔断，无法确认是否重复
+     */
+    public String claim(String scope, String idempotencyKey, String messageId) {
+        if (idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("幂等键长度不能超过 " + MAX_KEY_LENGTH);
+        }
+        if (!redisCircuitBreaker.allowRequest()) {
+            throw new IllegalStateException("Redis暂不可用，无法保证幂等，请稍后使用同一幂等键重试");
+        }
+        long start = System.nanoTime();
+        try {
+            String existing = stringRedisTemplate.execute(CLAIM_SCRIPT,
+                    Collections.singletonList(key(scope, idempotencyKey)), messageId, String.valueOf(ttlSeconds));
+            redisCircuitBreaker.recordSuccess(System.nanoTime() - start);
+            return existing;
+        } catch (Exception e) {
+            redisCircuitBreaker.recordFailure();
+            logger.warn("登记幂等键失败，拒绝本次发送: {} - {}", idempotencyKey, e.getMessage());
+            throw new IllegalStateException("Redis暂不可用，无法保证幂等，请稍后使用同一幂等键重试", e);
+        }
+    }
+
+    /**
+     * 发送失败时释放幂等键，允许客户端用同一个键重试；熔断期间跳过，键在过期后自动释放
+     */
+    public void release(String scope, String idempotencyKey, String messageId) {
+        if (!redisCircuitBreaker.allowRequest()) {
+            logger.warn("熔断中，未释放幂等键: {}", idempotencyKey);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            stringRedisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(key(scope, idempotencyKey)), messageId);
+            redisCircuitBreaker.recordSuccess(System.nanoTime() - start);
+        } catch (Exception e) {
+            redisCircuitBreaker.recordFailure();
+            logger.warn("释放幂等键失败: {} - {}", idempotencyKey, e.getMessage());
+        }
+    }
+
+    private String key(String scope, String idempotencyKey) {
+        return IDEMPOTENCY_PREFIX + scope + ":" + idempotencyKey;
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.service;
+
+import com.example.dto.MessageDTO;
+import com.example.util.KeyedOrderedExecutor;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 消息本地近端缓存
+ * 消息体写入后不可变，直接按容量淘汰缓存在本地；
+ * 消息状态可变，由状态写入方通过发布订阅广播失效通知，各节点收到后清除本地状态
+ */
+@Component
+public class MessageNearCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageNearCache.class);
+
+    // 状态失效通知频道，消息内容为逗号分隔的消息ID
+    public static final String STATUS_INVALIDATION_CHANNEL = "channel:message-status-invalidate";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private RedisMessageListenerContainer messageListenerContainer;
+
+    @Autowired
+    private KeyedOrderedExecutor messageListenerExecutor;
+
+    @Value("${redis.message.near-cache.max-size:10000}")
+    private long maxSize;
+
+    // 消息体在Redis中24小时过期，本地不宜保留太久
+    @Value("${redis.message.near-cache.expire-seconds:600}")
+    private long expireSeconds;
+
+    // 兜底过期时间，防止错过失效通知后长期读到旧状态
+    @Value("${redis.message.near-cache.status-expire-seconds:30}")
+    private long statusExpireSeconds;
+
+    private Cache<String, MessageDTO> messages;
+    private Cache<String, String> statuses;
+
+    @PostConstruct
+    public void init() {
+        messages = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(expireSeconds))
+                .recordStats()
+                .build();
+        statuses = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(statusExpireSeconds))
+                .recordStats()
+                .build();
+        // 与两级缓存的L1（CacheMetrics.bindLocal）使用相同的tag：cache + cache.manager
+        CaffeineCacheMetrics.monitor(meterRegistry, messages, "messageNearCache", "cache.manager", "near");
+        CaffeineCacheMetrics.monitor(meterRegistry, statuses, "messageStatusNearCache", "cache.manager", "near");
+
+        messageListenerContainer.addMessageListener((message, pattern) -> {
+            byte[] body = message.getBody();
+            Runnable invalidation = () -> {
+                try {
+                    String ids = new String(body, StandardCharsets.UTF_8);
+                    statuses.invalidateAll(Arrays.asList(ids.split(",")));
+                } catch (Exception e) {
+                    logger.warn("处理消息状态失效通知失败: {}", e.getMessage());
+                }
+            };
+            // 失效通知不能丢，监听线程池已满时直接在当前线程执行（只操作本地缓存，不访问Redis）
+            if (!messageListenerExecutor.execute(STATUS_INVALIDATION_CHANNEL, invalidation)) {
+                invalidation.run();
+            }
+        }, new ChannelTopic(STATUS_INVALIDATION_CHANNEL));
+    }
+
+    public MessageDTO getMessage(String messageId) {
+        return messages.getIfPresent(messageId);
+    }
+
+    public void putMessage(String messageId, MessageDTO message) {
+        messages.put(messageId, message);
+    }
+
+    public String getStatus(String messageId) {
+        return statuses.getIfPresent(messageId);
+    }
+
+    public void putStatus(String messageId, String status) {
+        statuses.put(messageId, status);
+    }
+
+    /**
+     * 命中统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("messageHitRate", messages.stats().hitRate());
+        stats.put("messageSize", messages.estimatedSize());
+        stats.put("statusHitRate", statuses.stats().hitRate());
+        stats.put("statusSize", statuses.estimatedSize());
+        return stats;
+    }
+}
@@ -0,0 +1,313 @@
+package com.example.service;
+
+import com.example.codec.MessageCodec;
+import com.example.dto.MessageDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Redis不可用时的本地消息缓冲
+ * 先写入有界内存队列，满了之后追加到可选的内存映射文件；Redis恢复后由RedisMessageService分批重放。
+ *
+ * 顺序：文件中有待重放数据时，新消息也追加到文件末尾，因此内存中的消息总是早于文件中的消息，
+ * 先取内存再取文件即为写入顺序。取出的一批在确认（acknowledge）前不从文件中移除，
+ * 重放失败时放回（restore）原位置，不会排到之后写入的消息后面。
+ * 文件写满时新消息仍可写入内存，此时这部分消息会先于文件中较早的消息重放（优先不丢消息）。
+ * 取出、确认和放回只由单个重放线程调用。
+ *
+ * 文件格式: [写位置 long][读位置 long] 之后是若干条记录 [长度 int][类型 byte][目标长度 short][目标][编码后的消息]。
+ * 打开文件时校验头部的读写位置并逐条检查记录边界，异常退出留下的不完整或损坏记录从第一条出错处截断
+ */
+@Component
+public class MessageSpillBuffer {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageSpillBuffer.class);
+
+    public static final byte KIND_QUEUE = 1;
+    public static final byte KIND_PUBLISH = 2;
+
+    private static final int HEADER_SIZE = 16;
+    private static final int WRITE_POS_OFFSET = 0;
+    private static final int READ_POS_OFFSET = 8;
+
+    // 记录头：[长度 int][类型 byte][目标长度 short]
+    private static final int RECORD_HEADER_SIZE = 7;
+
+    @Autowired
+    private MessageCodec messageCodec;
+
+    @Value("${redis.message.spill.memory-capacity:10000}")
+    private int memoryCapacity;
+
+    // 为空时不启用文件缓冲
+    @Value("${redis.message.spill.file:}")
+    private String filePath;
+
+    @Value("${redis.message.spill.file-size-mb:64}")
+    private int fileSizeMb;
+
+    // 内存队列和文件共用一把锁，保证写入位置的判断与写入是原子的
+    private final Object lock = new Object();
+    private final ArrayDeque<SpilledMessage> memory = new ArrayDeque<>();
+    private FileChannel fileChannel;
+    private MappedByteBuffer mapped;
+
+    // 已取出、待确认的一批：其中来自内存的消息，以及确认后文件的读位置（-1表示未从文件读取）
+    private final List<SpilledMessage> inFlightMemory = new ArrayList<>();
+    private long inFlightReadPos = -1;
+
+    /**
+     * 缓冲中的一条消息：类型（队列/频道）、目标列表key或频道名、消息本身（已分配ID）
+     */
+    public static class SpilledMessage {
+        private final byte kind;
+        private final String target;
+        private final MessageDTO message;
+
+        public SpilledMessage(byte kind, String target, MessageDTO message) {
+            this.kind = kind;
+            this.target = target;
+            this.message = message;
+        }
+
+        public byte getKind() { return kind; }
+        public String getTarget() { return target; }
+        public MessageDTO getMessage() { return message; }
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (filePath == null || filePath.isEmpty()) {
+            return;
+        }
+        Path path = Paths.get(filePath);
+        if (path.getParent() != null) {
+            path.getParent().toFile().mkdirs();
+        }
+        fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        mapped = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, (long) fileSizeMb * 1024 * 1024);
+        validateFile();
+        long pendingBytes = getFileBytes();
+        if (pendingBytes > 0) {
+            logger.info("本地消息缓冲文件中有待重放数据: {} 字节", pendingBytes);
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (mapped != null) {
+            mapped.force();
+        }
+        if (fileChannel != null) {
+            fileChannel.close();
+        }
+    }
+
+    /**
+     * 写入缓冲，内存和文件都已满时返回false
+     */
+    public boolean offer(SpilledMessage spilled) {
+        synchronized (lock) {
+            if (pendingFileBytes() > 0 && appendToFile(spilled)) {
+                return true;
+            }
+            if (memory.size() < memoryCapacity) {
+                memory.addLast(spilled);
+                return true;
+            }
+            return appendToFile(spilled);
+        }
+    }
+
+    /**
+     * 按写入顺序取出最多max条待重放的消息，先取内存再取文件
+     * 取出的消息须在重放成功后调用acknowledge，失败后调用restore
+     */
+    public List<SpilledMessage> drain(int max) {
+        synchronized (lock) {
+            List<SpilledMessage> drained = new ArrayList<>();
+            inFlightMemory.clear();
+            while (drained.size() < max && !memory.isEmpty()) {
+                SpilledMessage spilled = memory.pollFirst();
+                inFlightMemory.add(spilled);
+                drained.add(spilled);
+            }
+            inFlightReadPos = -1;
+            if (drained.size() < max && mapped != null) {
+                inFlightReadPos = readFromFile(drained, max - drained.size());
+            }
+            return drained;
+        }
+    }
+
+    /**
+     * 确认上一次取出的消息已重放，从文件中移除
+     */
+    public void acknowledge() {
+        synchronized (lock) {
+            if (inFlightReadPos >= 0) {
+                if (inFlightReadPos >= mapped.getLong(WRITE_POS_OFFSET)) {
+                    // 已全部读完，从头复用文件空间
+                    mapped.putLong(WRITE_POS_OFFSET, HEADER_SIZE);
+                    mapped.putLong(READ_POS_OFFSET, HEADER_SIZE);
+                } else {
+                    mapped.putLong(READ_POS_OFFSET, inFlightReadPos);
+                }
+            }
+            inFlightMemory.clear();
+            inFlightReadPos = -1;
+        }
+    }
+
+    /**
+     * 重放失败，把上一次取出的消息放回原位置：内存中的放回队首（可暂时超过容量），文件读位置不前移
+     */
+    public void restore() {
+        synchronized (lock) {
+            for (int i = inFlightMemory.size() - 1; i >= 0; i--) {
+                memory.addFirst(inFlightMemory.get(i));
+            }
+            inFlightMemory.clear();
+            inFlightReadPos = -1;
+        }
+    }
+
+    public boolean isEmpty() {
+        synchronized (lock) {
+            return memory.isEmpty() && pendingFileBytes() == 0;
+        }
+    }
+
+    public int getMemoryCount() {
+        synchronized (lock) {
+            return memory.size();
+        }
+    }
+
+    public long getFileBytes() {
+        synchronized (lock) {
+            return pendingFileBytes();
+        }
+    }
+
+    private long pendingFileBytes() {
+        if (mapped == null) {
+            return 0;
+        }
+        return mapped.getLong(WRITE_POS_OFFSET) - mapped.getLong(READ_POS_OFFSET);
+    }
+
+    private boolean appendToFile(SpilledMessage spilled) {
+        if (mapped == null) {
+            return false;
+        }
+        byte[] target = spilled.getTarget().getBytes(StandardCharsets.UTF_8);
+        byte[] payload = messageCodec.encode(spilled.getMessage());
+        int bodySize = 1 + 2 + target.length + payload.length;
+
+        long writePos = mapped.getLong(WRITE_POS_OFFSET);
+        if (writePos + 4 + bodySize > mapped.capacity()) {
+            return false;
+        }
+        int pos = (int) writePos;
+        mapped.putInt(pos, bodySize);
+        mapped.put(pos + 4, spilled.getKind());
+        mapped.putShort(pos + 5, (short) target.length);
+        mapped.put(pos + 7, target);
+        mapped.put(pos + 7 + target.length, payload);
+        // 记录写完后才推进写位置，异常退出时不完整的记录不会被读到
+        mapped.putLong(WRITE_POS_OFFSET, writePos + 4 + bodySize);
+        return true;
+    }
+
+    /**
+     * 从文件读位置开始读取最多max条，不修改读位置
+     *
+     * @return 读完这些记录后的读位置
+     */
+    private long readFromFile(List<SpilledMessage> drained, int max) {
+        long writePos = mapped.getLong(WRITE_POS_OFFSET);
+        long readPos = mapped.getLong(READ_POS_OFFSET);
+        int count = 0;
+        while (readPos < writePos && count < max) {
+            int pos = (int) readPos;
+            int bodySize = mapped.getInt(pos);
+            byte kind = mapped.get(pos + 4);
+            byte[] target = new byte[mapped.getShort(pos + 5)];
+            mapped.get(pos + 7, target);
+            byte[] payload = new byte[bodySize - 3 - target.length];
+            mapped.get(pos + 7 + target.length, payload);
+            readPos += 4 + bodySize;
+            count++;
+
+            try {
+                drained.add(new SpilledMessage(kind, new String(target, StandardCharsets.UTF_8), messageCodec.decode(payload)));
+            } catch (RuntimeException e) {
+                // 单条记录无法解码时跳过，不阻塞后面的消息
+                logger.error("本地缓冲文件中的消息无法解码，已跳过: {} - {}", pos, e.getMessage());
+            }
+        }
+        return readPos;
+    }
+
+    /**
+     * 校验文件头和记录边界
+     * 头部位置越界时丢弃全部内容；记录边界有误时从第一条出错的记录处截断写位置
+     */
+    private void validateFile() {
+        long capacity = mapped.capacity();
+        long writePos = mapped.getLong(WRITE_POS_OFFSET);
+        long readPos = mapped.getLong(READ_POS_OFFSET);
+        if (writePos == 0 && readPos == 0) {
+            // 新建的文件
+            reset();
+            return;
+        }
+        if (readPos < HEADER_SIZE || writePos < readPos || writePos > capacity) {
+            logger.warn("本地消息缓冲文件头部无效（读位置 {}，写位置 {}，容量 {}），丢弃文件中的数据",
+                    readPos, writePos, capacity);
+            reset();
+            return;
+        }
+
+        long pos = readPos;
+        while (pos < writePos) {
+            if (pos + RECORD_HEADER_SIZE > writePos) {
+                break;
+            }
+            int bodySize = mapped.getInt((int) pos);
+            byte kind = mapped.get((int) pos + 4);
+            int targetLength = mapped.getShort((int) pos + 5);
+            if (bodySize < 3 || pos + 4 + bodySize > writePos || targetLength < 0 || targetLength > bodySize - 3
+                    || (kind != KIND_QUEUE && kind != KIND_PUBLISH)) {
+                break;
+            }
+            pos += 4 + bodySize;
+        }
+        if (pos != writePos) {
+            logger.warn("本地消息缓冲文件在位置 {} 之后的记录无效，截断 {} 字节", pos, writePos - pos);
+            mapped.putLong(WRITE_POS_OFFSET, pos);
+        }
+    }
+
+    private void reset() {
+        mapped.putLong(WRITE_POS_OFFSET, HEADER_SIZE);
+        mapped.putLong(READ_POS_OFFSET, HEADER_SIZE);
+    }
+}
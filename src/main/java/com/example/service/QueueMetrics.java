@@ -0,0 +1,295 @@
+package com.example.service;
+
+import com.example.dto.MessagePriority;
+import com.example.util.IdGenerator;
+import com.example.util.KeyedOrderedExecutor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 队列监控指标（通过actuator的metrics端点暴露）
+ *
+ * 入队/出队/过期丢弃为计数器，速率由监控系统按时间求导；端到端延迟为Timer。
+ * 队列深度、处理中列表长度和积压时长是Redis中的状态，不在每次请求时查询，
+ * 而是定时用一个pipeline对所有已登记队列采样，Gauge只读取采样结果。
+ *
+ * 队列名来自客户端请求，指标的tag不能无限增长：配置中列出的队列始终登记；其他队列按出现顺序
+ * 最多登记 max-dynamic-queues 个，超出的合并到 queue=other 下，只记录计数和延迟、不采样深度。
+ * 动态登记的队列已清空且一段时间内没有收发时注销其全部指标，腾出名额
+ */
+@Component
+public class QueueMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueueMetrics.class);
+
+    // 超出登记名额的队列合并使用的tag值
+    static final String OTHER_QUEUE = "other";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private KeyedOrderedExecutor messageListenerExecutor;
+
+    // 始终登记的队列
+    @Value("${redis.message.metrics.queues:queue:user}")
+    private List<String> configuredQueues;
+
+    // 配置之外最多自动登记的队列数，0表示其他队列全部合并到other
+    @Value("${redis.message.metrics.max-dynamic-queues:20}")
+    private int maxDynamicQueues;
+
+    // 动态登记的队列清空后多久没有收发即注销
+    @Value("${redis.message.metrics.idle-evict-ms:600000}")
+    private long idleEvictMillis;
+
+    @Value("${redis.message.metrics.processing-queue:queue:processing}")
+    private String processingQueue;
+
+    // 队列名 -> 各优先级子队列深度，下标为MessagePriority.ordinal()
+    private final ConcurrentHashMap<String, AtomicLong[]> depths = new ConcurrentHashMap<>();
+
+    // 队列名 -> 最早一条待消费消息已等待的毫秒数
+    private final ConcurrentHashMap<String, AtomicLong> lags = new ConcurrentHashMap<>();
+
+    private final AtomicLong processingSize = new AtomicLong();
+
+    private final Map<String, Counter> enqueued = new ConcurrentHashMap<>();
+    private final Map<String, Counter> dequeued = new ConcurrentHashMap<>();
+    private final Map<String, Counter> expired = new ConcurrentHashMap<>();
+    private final Map<String, Timer> latencies = new ConcurrentHashMap<>();
+
+    // 已登记队列 -> 为它注册的所有指标，注销时逐个从registry移除
+    private final Map<String, List<Meter>> queueMeters = new ConcurrentHashMap<>();
+
+    // 动态登记的队列 -> 最近一次收发的时间
+    private final Map<String, Long> lastActive = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("redis.queue.processing.size", processingSize, AtomicLong::get)
+                .description("处理中列表的长度")
+                .tag("queue", processingQueue)
+                .register(meterRegistry);
+        Gauge.builder("redis.listener.queued", messageListenerExecutor, KeyedOrderedExecutor::getQueuedTaskCount)
+                .description("发布订阅监听线程池中排队的消息数")
+                .register(meterRegistry);
+        FunctionCounter.builder("redis.listener.rejected", messageListenerExecutor, KeyedOrderedExecutor::getRejectedTaskCount)
+                .description("监听线程池已满而丢弃的发布订阅消息数")
+                .register(meterRegistry);
+        for (String queueName : configuredQueues) {
+            register(queueName);
+        }
+    }
+
+    public void recordEnqueued(String queueName, long count) {
+        String queue = resolve(queueName);
+        enqueued.computeIfAbsent(queue, k -> track(k, Counter.builder("redis.queue.enqueued")
+                .description("入队消息数")
+                .tag("queue", k)
+                .register(meterRegistry))).increment(count);
+    }
+
+    /**
+     * 记录一次出队，同时记录消息从发送到被消费的端到端延迟
+     */
+    public void recordDequeued(String queueName, MessagePriority priority, LocalDateTime sentAt) {
+        String queue = resolve(queueName);
+        dequeued.computeIfAbsent(queue, k -> track(k, Counter.builder("redis.queue.dequeued")
+                .description("出队消息数")
+                .tag("queue", k)
+                .register(meterRegistry))).increment();
+        if (sentAt == null) {
+            return;
+        }
+        latencies.computeIfAbsent(queue + "|" + priority.name(), k -> track(queue, Timer.builder("redis.queue.latency")
+                .description("消息从发送到被消费的耗时")
+                .tag("queue", queue)
+                .tag("priority", priority.name())
+                .register(meterRegistry))).record(Duration.between(sentAt, LocalDateTime.now()));
+    }
+
+    /**
+     * 出队时消息体已过期被丢弃
+     */
+    public void recordExpired(String queueName) {
+        String queue = resolve(queueName);
+        expired.computeIfAbsent(queue, k -> track(k, Counter.builder("redis.queue.expired")
+                .description("出队时消息体已过期而丢弃的消息数")
+                .tag("queue", k)
+                .register(meterRegistry))).increment();
+    }
+
+    /**
+     * 定时采样：每个已知队列的各优先级子队列执行LLEN和LINDEX -1（最早的消息ID，用于计算积压时长），
+     * 再加上处理中列表的LLEN，全部在一个pipeline中完成
+     */
+    @Scheduled(fixedDelayString = "${redis.message.metrics.sample-interval-ms:5000}")
+    public void sample() {
+        List<String> queueNames = new ArrayList<>(depths.keySet());
+        MessagePriority[] priorities = MessagePriority.values();
+        List<Object> results;
+        try {
+            results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (String queueName : queueNames) {
+                    for (MessagePriority priority : priorities) {
+                        byte[] key = priority.queueKey(queueName).getBytes(StandardCharsets.UTF_8);
+                        connection.listCommands().lLen(key);
+                        connection.listCommands().lIndex(key, -1);
+                    }
+                }
+                connection.listCommands().lLen(processingQueue.getBytes(StandardCharsets.UTF_8));
+                return null;
+            });
+        } catch (Exception e) {
+            logger.warn("采样队列指标失败: {}", e.getMessage());
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        int index = 0;
+        List<String> drained = new ArrayList<>();
+        for (String queueName : queueNames) {
+            AtomicLong[] queueDepths = depths.get(queueName);
+            long oldest = -1;
+            long total = 0;
+            for (MessagePriority priority : priorities) {
+                Object size = results.get(index++);
+                Object tailId = results.get(index++);
+                long depth = size instanceof Long ? (Long) size : 0L;
+                total += depth;
+                if (queueDepths != null) {
+                    queueDepths[priority.ordinal()].set(depth);
+                }
+                if (tailId instanceof String) {
+                    long id = IdGenerator.parse((String) tailId);
+                    if (id >= 0) {
+                        long sentAt = IdGenerator.extractTimestamp(id);
+                        oldest = oldest < 0 ? sentAt : Math.min(oldest, sentAt);
+                    }
+                }
+            }
+            AtomicLong lag = lags.get(queueName);
+            if (lag != null) {
+                lag.set(oldest < 0 ? 0 : Math.max(0, now - oldest));
+            }
+            Long active = lastActive.get(queueName);
+            if (total == 0 && active != null && now - active >= idleEvictMillis) {
+                drained.add(queueName);
+            }
+        }
+        Object processing = results.get(index);
+        processingSize.set(processing instanceof Long ? (Long) processing : 0L);
+
+        for (String queueName : drained) {
+            unregister(queueName);
+        }
+    }
+
+    /**
+     * 返回指标使用的队列名：已登记的队列原样返回；未登记的在名额内自动登记，否则归入other
+     */
+    private String resolve(String queueName) {
+        if (lastActive.containsKey(queueName)) {
+            lastActive.put(queueName, System.currentTimeMillis());
+            return queueName;
+        }
+        if (depths.containsKey(queueName)) {
+            return queueName;
+        }
+        synchronized (this) {
+            if (!depths.containsKey(queueName)) {
+                if (lastActive.size() >= maxDynamicQueues) {
+                    return OTHER_QUEUE;
+                }
+                register(queueName);
+            }
+            lastActive.put(queueName, System.currentTimeMillis());
+        }
+        return queueName;
+    }
+
+    /**
+     * 注销动态登记的队列：移除深度、积压、计数和延迟指标，下次收发时重新登记
+     */
+    private synchronized void unregister(String queueName) {
+        Long active = lastActive.get(queueName);
+        if (active == null || System.currentTimeMillis() - active < idleEvictMillis) {
+            return;
+        }
+        lastActive.remove(queueName);
+        depths.remove(queueName);
+        lags.remove(queueName);
+        enqueued.remove(queueName);
+        dequeued.remove(queueName);
+        expired.remove(queueName);
+        latencies.keySet().removeIf(key -> key.startsWith(queueName + "|"));
+        List<Meter> meters = queueMeters.remove(queueName);
+        if (meters != null) {
+            meters.forEach(meterRegistry::remove);
+        }
+        logger.debug("队列已清空且长时间无收发，注销指标: {}", queueName);
+    }
+
+    private <M extends Meter> M track(String queueName, M meter) {
+        if (!OTHER_QUEUE.equals(queueName)) {
+            queueMeters.computeIfAbsent(queueName, k -> new CopyOnWriteArrayList<>()).add(meter);
+        }
+        return meter;
+    }
+
+    /**
+     * 注册队列的深度和积压Gauge，重复调用无副作用
+     */
+    private void register(String queueName) {
+        if (depths.containsKey(queueName)) {
+            return;
+        }
+        depths.computeIfAbsent(queueName, k -> {
+            AtomicLong[] values = new AtomicLong[MessagePriority.values().length];
+            for (MessagePriority priority : MessagePriority.values()) {
+                AtomicLong value = new AtomicLong();
+                values[priority.ordinal()] = value;
+                track(k, Gauge.builder("redis.queue.depth", value, AtomicLong::get)
+                        .description("队列中待消费的消息数")
+                        .tag("queue", k)
+                        .tag("priority", priority.name())
+                        .register(meterRegistry));
+            }
+            AtomicLong lag = new AtomicLong();
+            lags.put(k, lag);
+            track(k, Gauge.builder("redis.queue.lag", lag, AtomicLong::get)
+                    .description("最早一条待消费消息已等待的毫秒数")
+                    .tag("queue", k)
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry));
+            return values;
+        });
+    }
+}
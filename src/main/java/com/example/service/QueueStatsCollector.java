@@ -0,0 +1,189 @@
+package com.example.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 队列统计计数器
+ * 每条消息只在本地LongAdder上累加，定时把增量聚合后批量写入Redis，
+ * 避免每条消息都额外执行 HINCRBY + EXPIRE
+ *
+ * 队列名来自客户端请求，本地累加的队列数与QueueMetrics一样有上限并按空闲时间回收：
+ * 超过 max-queues 的队列不在本地累加，每次直接 HINCRBY 写入Redis（计数不丢，只是不合并）；
+ * 连续 idle-evict-ms 没有新增量的队列从本地移除，移除后再保留一个刷新周期以收尾并发的累加
+ */
+@Component
+public class QueueStatsCollector {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueueStatsCollector.class);
+
+    private static final String QUEUE_STATS_PREFIX = "stats:queue:";
+    private static final long STATS_TTL_SECONDS = TimeUnit.DAYS.toSeconds(30);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    // 本地累加的队列数上限
+    @Value("${redis.message.stats.max-queues:1000}")
+    private int maxQueues;
+
+    // 与队列指标使用同一个空闲回收时间
+    @Value("${redis.message.metrics.idle-evict-ms:600000}")
+    private long idleEvictMillis;
+
+    // 队列名 -> 操作名 -> 尚未刷入Redis的增量
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, LongAdder>> pending = new ConcurrentHashMap<>();
+
+    // 队列名 -> 开始没有新增量的时间，只在刷新线程中读写
+    private final Map<String, Long> idleSince = new HashMap<>();
+
+    // 已从pending移除、下次刷新时再收尾一次的计数
+    private List<Map.Entry<String, ConcurrentHashMap<String, LongAdder>>> retired = new ArrayList<>();
+
+    /**
+     * 本地累加计数
+     */
+    public void increment(String queueName, String operation) {
+        increment(queueName, operation, 1);
+    }
+
+    public void increment(String queueName, String operation, long delta) {
+        ConcurrentHashMap<String, LongAdder> operations = pending.get(queueName);
+        if (operations == null) {
+            if (pending.size() >= maxQueues) {
+                incrementDirectly(queueName, operation, delta);
+                return;
+            }
+            operations = pending.computeIfAbsent(queueName, k -> new ConcurrentHashMap<>());
+        }
+        operations.computeIfAbsent(operation, k -> new LongAdder()).add(delta);
+    }
+
+    /**
+     * 超出本地上限的队列直接写入Redis
+     */
+    private void incrementDirectly(String queueName, String operation, long delta) {
+        String statsKey = QUEUE_STATS_PREFIX + queueName;
+        try {
+            stringRedisTemplate.opsForHash().increment(statsKey, operation, delta);
+            stringRedisTemplate.expire(statsKey, STATS_TTL_SECONDS, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            logger.warn("写入队列统计失败: {} - {}", queueName, e.getMessage());
+        }
+    }
+
+    /**
+     * 读取计数：Redis中已持久化的值 + 本地未刷新的增量
+     */
+    public Map<String, Long> getCounts(String queueName, String... operations) {
+        List<String> stored = stringRedisTemplate.<String, String>opsForHash()
+                .multiGet(QUEUE_STATS_PREFIX + queueName, Arrays.asList(operations));
+        Map<String, LongAdder> local = pending.get(queueName);
+
+        Map<String, Long> counts = new HashMap<>();
+        for (int i = 0; i < operations.length; i++) {
+            String value = stored != null ? stored.get(i) : null;
+            long count = value != null ? Long.parseLong(value) : 0L;
+            if (local != null) {
+                LongAdder adder = local.get(operations[i]);
+                if (adder != null) {
+                    count += adder.sum();
+                }
+            }
+            counts.put(operations[i], count);
+        }
+        return counts;
+    }
+
+    /**
+     * 定时把本地增量聚合写入Redis，每个统计key一次 HINCRBY 每个字段 + 一次 EXPIRE，全部走同一个pipeline
+     */
+    @Scheduled(fixedDelayString = "${redis.message.stats.flush-interval-ms:500}")
+    public synchronized void flush() {
+        Map<String, Map<String, Long>> deltas = new HashMap<>();
+        List<Map.Entry<String, ConcurrentHashMap<String, LongAdder>>> finishing = retired;
+        retired = new ArrayList<>();
+        for (Map.Entry<String, ConcurrentHashMap<String, LongAdder>> entry : finishing) {
+            collect(entry.getKey(), entry.getValue(), deltas);
+        }
+        pending.forEach((queueName, operations) -> collect(queueName, operations, deltas));
+        evictIdle(deltas);
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                deltas.forEach((queueName, operations) -> {
+                    byte[] statsKey = (QUEUE_STATS_PREFIX + queueName).getBytes(StandardCharsets.UTF_8);
+                    operations.forEach((operation, delta) -> connection.hashCommands()
+                            .hIncrBy(statsKey, operation.getBytes(StandardCharsets.UTF_8), delta));
+                    connection.keyCommands().expire(statsKey, STATS_TTL_SECONDS);
+                });
+                return null;
+            });
+        } catch (Exception e) {
+            // 写入失败时把增量加回本地，下次再刷（已被回收的队列重新登记）
+            deltas.forEach((queueName, operations) -> operations.forEach((operation, delta) ->
+                    pending.computeIfAbsent(queueName, k -> new ConcurrentHashMap<>())
+                            .computeIfAbsent(operation, k -> new LongAdder()).add(delta)));
+            logger.warn("刷新队列统计失败，将在下次重试: {}", e.getMessage());
+        }
+    }
+
+    private static void collect(String queueName, Map<String, LongAdder> operations,
+                                Map<String, Map<String, Long>> deltas) {
+        operations.forEach((operation, adder) -> {
+            long delta = adder.sumThenReset();
+            if (delta != 0) {
+                deltas.computeIfAbsent(queueName, k -> new HashMap<>()).merge(operation, delta, Long::sum);
+            }
+        });
+    }
+
+    /**
+     * 回收连续idle-evict-ms没有新增量的队列：从pending移除并放入retired，下次刷新时再收尾一次
+     */
+    private void evictIdle(Map<String, Map<String, Long>> deltas) {
+        long now = System.currentTimeMillis();
+        idleSince.keySet().retainAll(pending.keySet());
+        Iterator<Map.Entry<String, ConcurrentHashMap<String, LongAdder>>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, ConcurrentHashMap<String, LongAdder>> entry = it.next();
+            String queueName = entry.getKey();
+            if (deltas.containsKey(queueName)) {
+                idleSince.remove(queueName);
+                continue;
+            }
+            long since = idleSince.computeIfAbsent(queueName, k -> now);
+            if (now - since >= idleEvictMillis) {
+                it.remove();
+                idleSince.remove(queueName);
+                retired.add(entry);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+}
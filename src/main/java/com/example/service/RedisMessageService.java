@@ -1,19 +1,45 @@
 package com.example.service;
 
+import com.example.codec.MessageCodec;
 import com.example.dto.MessageDTO;
+import com.example.dto.MessagePriority;
+import com.example.util.CircuitBreaker;
+import com.example.util.IdGenerator;
+import com.example.util.KeyedOrderedExecutor;
+import com.example.util.SmoothWeightedRoundRobin;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.data.redis.listener.ChannelTopic;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class RedisMessageService {
@@ -31,92 +57,591 @@ public class RedisMessageService {
     // Redis缓存前缀
     private static final String MESSAGE_CACHE_PREFIX = "message:";
     private static final String USER_MESSAGES_PREFIX = "user_messages:";
-    private static final String QUEUE_STATS_PREFIX = "stats:queue:";
     
+    // 消息体缓存时间
+    private static final long MESSAGE_TTL_SECONDS = TimeUnit.HOURS.toSeconds(24);
+    
+    // 大消息发布到频道时只发送该前缀 + 消息ID，订阅方再按ID读取消息体
+    private static final String PUBLISH_REFERENCE_PREFIX = "ref:";
+    private static final byte[] PUBLISH_REFERENCE_PREFIX_BYTES = PUBLISH_REFERENCE_PREFIX.getBytes(StandardCharsets.UTF_8);
+    
+    // 用户收件箱写入脚本：LPUSH + LTRIM 保证列表有界，只有剩余TTL低于阈值时才刷新过期时间
+    private static final DefaultRedisScript<Long> INBOX_PUSH_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('LPUSH', KEYS[1], ARGV[1]) " +
+            "redis.call('LTRIM', KEYS[1], 0, tonumber(ARGV[2]) - 1) " +
+            "local ttl = redis.call('TTL', KEYS[1]) " +
+            "if ttl < 0 or ttl < tonumber(ARGV[3]) - tonumber(ARGV[4]) then " +
+            "  redis.call('EXPIRE', KEYS[1], ARGV[3]) " +
+            "end " +
+            "return ttl", Long.class);
+    
+    // 按给定顺序依次RPOP各优先级子队列，返回第一个非空结果 {key, 消息ID}
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> POP_FIRST_SCRIPT = new DefaultRedisScript<>(
+            "for _, key in ipairs(KEYS) do " +
+            "  local id = redis.call('RPOP', key) " +
+            "  if id then return {key, id} end " +
+            "end " +
+            "return nil", List.class);
+    
+    // 收件箱分页：按游标ID定位（LPOS）、取一页ID（LRANGE）、取回消息体和状态（MGET）在一次往返中完成。
+    // 游标不在列表中时返回空表；否则返回 {ID列表, 值列表}，值列表为各消息体，includeStatus时后接各状态。
+    // 脚本读取的消息体key未在KEYS中声明，只适用于单机Redis（与本项目的连接配置一致）
+    private static final byte[] INBOX_PAGE_SCRIPT_BYTES = (
+            "local start = 0 " +
+            "if ARGV[1] ~= '' then " +
+            "  local pos = redis.call('LPOS', KEYS[1], ARGV[1]) " +
+            "  if not pos then return {} end " +
+            "  start = pos + 1 " +
+            "end " +
+            "local ids = redis.call('LRANGE', KEYS[1], start, start + tonumber(ARGV[2]) - 1) " +
+            "if #ids == 0 then return {ids, {}} end " +
+            "local keys = {} " +
+            "for i, id in ipairs(ids) do keys[i] = ARGV[3] .. id end " +
+            "if ARGV[5] == '1' then " +
+            "  for i, id in ipairs(ids) do keys[#ids + i] = ARGV[3] .. id .. ARGV[4] end " +
+            "end " +
+            "return {ids, redis.call('MGET', unpack(keys))}").getBytes(StandardCharsets.UTF_8);
+    
+    // 收件箱每页最多返回的消息数
+    private static final int MAX_INBOX_PAGE_SIZE = 100;
+    
+    private static final byte[] INBOX_PUSH_SCRIPT_BYTES = INBOX_PUSH_SCRIPT.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+    
+    @Value("${redis.message.batch.chunk-size:1000}")
+    private int batchChunkSize;
+    
+    @Value("${redis.message.inbox.max-size:1000}")
+    private int inboxMaxSize;
+    
+    // 收件箱过期时间与消息体保持一致，避免列表比它引用的消息活得更久
+    @Value("${redis.message.inbox.ttl-seconds:86400}")
+    private long inboxTtlSeconds;
+    
+    @Value("${redis.message.inbox.expire-refresh-seconds:600}")
+    private long inboxExpireRefreshSeconds;
+    
+    // 队列和用户消息列表只存消息ID
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    
+    // BRPOP走独立连接池，不阻塞共享连接上的其他命令；stringRedisTemplate是@Primary，须按名称限定
+    @Autowired
+    @Qualifier("blockingRedisTemplate")
+    private StringRedisTemplate blockingRedisTemplate;
+    
+    @Value("${redis.message.blocking.max-wait-seconds:30}")
+    private int blockingMaxWaitSeconds;
+    
+    // 编码（及压缩）后消息体的默认上限，可用 redis.message.max-payload-bytes.{队列或频道名} 单独配置
+    @Value("${redis.message.max-payload-bytes:1048576}")
+    private int defaultMaxPayloadBytes;
+    
+    // 超过该大小的消息发布到频道时只发送引用，0 表示总是发送完整消息体
+    @Value("${redis.message.pubsub.reference-threshold-bytes:65536}")
+    private int publishReferenceThreshold;
+    
+    @Autowired
+    private Environment environment;
+    
+    // 消息体按ID存储一份，由MessageCodec编码
     @Autowired
-    private RedisTemplate<String, Object> redisTemplate;
+    private RedisTemplate<String, byte[]> messageRedisTemplate;
+    
+    @Autowired
+    private MessageCodec messageCodec;
     
     @Autowired
     private RedisMessageListenerContainer messageListenerContainer;
     
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    @Autowired
+    private QueueStatsCollector queueStatsCollector;
+    
+    @Autowired
+    private KeyedOrderedExecutor messageListenerExecutor;
+    
+    @Autowired
+    private DelayedMessageScheduler delayedMessageScheduler;
+    
+    @Autowired
+    private QueueMetrics queueMetrics;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    // 按时间有序的消息ID，比UUID.randomUUID()更便宜且可排序
+    @Autowired
+    private IdGenerator idGenerator;
+    
+    @Autowired
+    private MessageNearCache messageNearCache;
+    
+    // Redis慢或不可用时熔断，生产者消息转入本地缓冲
+    @Autowired
+    private CircuitBreaker redisCircuitBreaker;
+    
+    @Autowired
+    private MessageSpillBuffer messageSpillBuffer;
+    
+    @Autowired
+    private MessageDeduplicator messageDeduplicator;
+    
+    // 每个队列独立的优先级加权轮询状态
+    private final ConcurrentHashMap<String, SmoothWeightedRoundRobin<MessagePriority>> priorityPickers = new ConcurrentHashMap<>();
+    
+    // 待批量写入的消息状态，同一消息只保留最新状态
+    private final ConcurrentHashMap<String, String> pendingStatusUpdates = new ConcurrentHashMap<>();
 
     @PostConstruct
     public void initMessageListeners() {
-        // 订阅用户频道
+        // 订阅用户频道：订阅线程（Redis客户端的I/O线程）只负责按频道投递，解码和处理在监听线程池中进行；
+        // 监听线程池积压时丢弃并计数，不能阻塞I/O线程（发布订阅本身也只保证最多一次送达）
         messageListenerContainer.addMessageListener((message, pattern) -> {
-            try {
-                String messageBody = new String(message.getBody());
-                MessageDTO msg = objectMapper.readValue(messageBody, MessageDTO.class);
-                handleUserChannelMessage(msg);
-            } catch (Exception e) {
-                logger.error("处理用户频道消息失败: {}", e.getMessage(), e);
+            byte[] body = message.getBody();
+            boolean accepted = messageListenerExecutor.execute(USER_CHANNEL, () -> {
+                try {
+                    MessageDTO msg = decodePublished(body);
+                    handleUserChannelMessage(msg);
+                } catch (Exception e) {
+                    logger.error("处理用户频道消息失败: {}", e.getMessage(), e);
+                }
+            });
+            if (!accepted) {
+                logger.warn("监听线程池已满，丢弃用户频道消息，累计丢弃 {} 条", messageListenerExecutor.getRejectedTaskCount());
             }
         }, new ChannelTopic(USER_CHANNEL));
 
         // 订阅通知频道
         messageListenerContainer.addMessageListener((message, pattern) -> {
-            try {
-                String messageBody = new String(message.getBody());
-                MessageDTO msg = objectMapper.readValue(messageBody, MessageDTO.class);
-                handleNotificationChannelMessage(msg);
-            } catch (Exception e) {
-                logger.error("处理通知频道消息失败: {}", e.getMessage(), e);
+            byte[] body = message.getBody();
+            boolean accepted = messageListenerExecutor.execute(NOTIFICATION_CHANNEL, () -> {
+                try {
+                    MessageDTO msg = decodePublished(body);
+                    handleNotificationChannelMessage(msg);
+                } catch (Exception e) {
+                    logger.error("处理通知频道消息失败: {}", e.getMessage(), e);
+                }
+            });
+            if (!accepted) {
+                logger.warn("监听线程池已满，丢弃通知频道消息，累计丢弃 {} 条", messageListenerExecutor.getRejectedTaskCount());
             }
         }, new ChannelTopic(NOTIFICATION_CHANNEL));
     }
 
     /**
      * 使用Redis List作为消息队列发送消息
+     * 优先级由消息类型决定
      */
     public String sendToQueue(String queueName, MessageDTO message) {
-        try {
-            // 生成消息ID
-            message.setId(UUID.randomUUID().toString());
-            message.setTimestamp(LocalDateTime.now());
-            
-            // 序列化消息
-            String messageJson = objectMapper.writeValueAsString(message);
-            
-            // 推送到Redis队列（List结构）
-            redisTemplate.opsForList().leftPush(queueName, messageJson);
+        return sendToQueue(queueName, message, null);
+    }
+
+    /**
+     * 按指定优先级发送消息到队列，priority为空时按消息类型决定
+     */
+    public String sendToQueue(String queueName, MessageDTO message, MessagePriority priority) {
+        return sendToQueue(queueName, message, priority, null);
+    }
+
+    /**
+     * 带幂等键发送消息到队列，同一队列内相同的幂等键在有效期内只会发送一次，重复请求返回首次的消息ID
+     */
+    public String sendToQueue(String queueName, MessageDTO message, MessagePriority priority, String idempotencyKey) {
+        return sendOnce("queue:" + queueName, idempotencyKey,
+                messageId -> doSendToQueue(queueName, message, priority, messageId));
+    }
+
+    private String doSendToQueue(String queueName, MessageDTO message, MessagePriority priority, String messageId) {
+        MessagePriority resolved = priority != null ? priority : MessagePriority.forType(message.getType());
+        
+        message.setId(messageId);
+        message.setTimestamp(LocalDateTime.now());
+        byte[] payload = messageCodec.encode(message);
+        checkPayloadSize(queueName, payload);
+        String listKey = resolved.queueKey(queueName);
+        
+        if (!redisCircuitBreaker.allowRequest()) {
+            spill(MessageSpillBuffer.KIND_QUEUE, listKey, message);
+        } else {
+            long start = System.nanoTime();
+            try {
+                // 先缓存消息体，保证消费者拿到ID时消息体已存在
+                cacheMessage(message, payload, bodyTtlSeconds(message));
+                
+                // 队列（List结构）中只推送消息ID，按优先级进入对应子队列
+                stringRedisTemplate.opsForList().leftPush(listKey, message.getId());
+                redisCircuitBreaker.recordSuccess(System.nanoTime() - start);
+            } catch (Exception e) {
+                redisCircuitBreaker.recordFailure();
+                logger.warn("发送消息到Redis队列失败，转入本地缓冲: {} - {}", queueName, e.getMessage());
+                spill(MessageSpillBuffer.KIND_QUEUE, listKey, message);
+            }
+        }
+        
+        // 更新队列统计
+        updateQueueStats(queueName, "sent");
+        queueMetrics.recordEnqueued(queueName, 1);
+        
+        logger.info("消息已发送到Redis队列: {} [{}] - {}", queueName, resolved, message.getId());
+        return message.getId();
+    }
+
+    /**
+     * 批量发送消息到队列
+     * 并行编码，所有消息体和收件箱写入走同一个pipeline，每个优先级子队列只执行一次多值LPUSH
+     *
+     * @return 按输入顺序返回的消息ID
+     */
+    public List<String> sendBatch(String queueName, List<MessageDTO> messages) {
+        if (messages.isEmpty()) {
+            return Collections.emptyList();
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<String> listKeys = new ArrayList<>(messages.size());
+        for (MessageDTO message : messages) {
+            message.setId(idGenerator.nextIdString());
+            message.setTimestamp(now);
+            listKeys.add(MessagePriority.forType(message.getType()).queueKey(queueName));
+        }
+        List<byte[]> payloads = messages.parallelStream().map(messageCodec::encode).collect(Collectors.toList());
+        payloads.forEach(payload -> checkPayloadSize(queueName, payload));
+        
+        if (!redisCircuitBreaker.allowRequest()) {
+            spillAll(MessageSpillBuffer.KIND_QUEUE, listKeys, messages);
+        } else {
+            long start = System.nanoTime();
+            try {
+                writeQueueMessages(messages, payloads, listKeys);
+                redisCircuitBreaker.recordSuccess(System.nanoTime() - start);
+            } catch (Exception e) {
+                redisCircuitBreaker.recordFailure();
+                logger.warn("批量发送消息到Redis队列失败，转入本地缓冲: {} - {}", queueName, e.getMessage());
+                spillAll(MessageSpillBuffer.KIND_QUEUE, listKeys, messages);
+            }
+        }
+        
+        queueStatsCollector.increment(queueName, "sent", messages.size());
+        queueMetrics.recordEnqueued(queueName, messages.size());
+        logger.info("批量消息已发送到Redis队列: {} - {} 条", queueName, messages.size());
+        return messages.stream().map(MessageDTO::getId).collect(Collectors.toList());
+    }
+
+    /**
+     * 在一个pipeline中写入消息体、收件箱，并按目标列表分组执行多值LPUSH
+     * 同一连接上按顺序执行，消息体写入后才推送ID
+     */
+    private void writeQueueMessages(List<MessageDTO> messages, List<byte[]> payloads, List<String> listKeys) {
+        Map<String, List<byte[]>> idsByListKey = new LinkedHashMap<>();
+        for (int i = 0; i < messages.size(); i++) {
+            idsByListKey.computeIfAbsent(listKeys.get(i), k -> new ArrayList<>())
+                    .add(toBytes(messages.get(i).getId()));
+        }
+        
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < messages.size(); i++) {
+                MessageDTO message = messages.get(i);
+                connection.stringCommands().setEx(toBytes(MESSAGE_CACHE_PREFIX + message.getId()),
+                        bodyTtlSeconds(message), payloads.get(i));
+                if (message.getReceiver() != null) {
+                    pushToInbox(connection, message.getReceiver(), message.getId());
+                }
+            }
+            idsByListKey.forEach((listKey, ids) -> connection.listCommands()
+                    .lPush(toBytes(listKey), ids.toArray(new byte[0][])));
+            return null;
+        });
+    }
+
+    /**
+     * 从JSON数组流中逐条解析消息并分块批量发送，整个数组不会一次性加载到内存
+     * 分块发送，出错时之前的分块已经写入：任何错误（包括元素不是对象、格式错误或数组不完整）
+     * 的异常信息中都带有已发送的条数，调用方据此判断是否部分成功
+     *
+     * @return 发送的消息数量
+     */
+    public int sendBatch(String queueName, InputStream jsonArray) {
+        int total = 0;
+        int index = 0;
+        try (JsonParser parser = objectMapper.getFactory().createParser(jsonArray)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("请求体必须是JSON数组");
+            }
+            List<MessageDTO> chunk = new ArrayList<>(batchChunkSize);
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == null) {
+                    throw new IllegalArgumentException("JSON数组不完整，缺少结尾的 ]");
+                }
+                index++;
+                if (token != JsonToken.START_OBJECT) {
+                    throw new IllegalArgumentException("第 " + index + " 个元素不是JSON对象: " + token);
+                }
+                try {
+                    chunk.add(objectMapper.readValue(parser, MessageDTO.class));
+                } catch (JsonProcessingException e) {
+                    throw new IllegalArgumentException("第 " + index + " 个元素格式错误: " + e.getOriginalMessage());
+                }
+                if (chunk.size() >= batchChunkSize) {
+                    total += sendBatch(queueName, chunk).size();
+                    chunk = new ArrayList<>(batchChunkSize);
+                }
+            }
+            total += sendBatch(queueName, chunk).size();
+            return total;
+        } catch (IllegalArgumentException e) {
+            logger.warn("批量发送消息中止，已发送 {} 条: {}", total, e.getMessage());
+            throw new IllegalArgumentException(e.getMessage() + "，已发送 " + total + " 条", e);
+        } catch (JsonProcessingException e) {
+            logger.warn("批量发送消息中止，已发送 {} 条: {}", total, e.getOriginalMessage());
+            throw new IllegalArgumentException("JSON格式错误: " + e.getOriginalMessage() + "，已发送 " + total + " 条", e);
+        } catch (Exception e) {
+            logger.error("批量发送消息失败，已发送 {} 条: {}", total, e.getMessage(), e);
+            throw new RuntimeException("消息发送失败，已发送 " + total + " 条", e);
+        }
+    }
+
+    /**
+     * 批量发布消息到Redis频道
+     * 消息体写入和PUBLISH走同一个pipeline
+     */
+    public List<String> publishBatch(String channel, List<MessageDTO> messages) {
+        if (messages.isEmpty()) {
+            return Collections.emptyList();
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (MessageDTO message : messages) {
+            message.setId(idGenerator.nextIdString());
+            message.setTimestamp(now);
+        }
+        List<String> channels = Collections.nCopies(messages.size(), channel);
+        List<byte[]> payloads = messages.parallelStream().map(messageCodec::encode).collect(Collectors.toList());
+        payloads.forEach(payload -> checkPayloadSize(channel, payload));
+        
+        if (!redisCircuitBreaker.allowRequest()) {
+            spillAll(MessageSpillBuffer.KIND_PUBLISH, channels, messages);
+        } else {
+            long start = System.nanoTime();
+            try {
+                writePublishedMessages(messages, payloads, channels);
+                redisCircuitBreaker.recordSuccess(System.nanoTime() - start);
+            } catch (Exception e) {
+                redisCircuitBreaker.recordFailure();
+                logger.warn("批量发布消息失败，转入本地缓冲: {} - {}", channel, e.getMessage());
+                spillAll(MessageSpillBuffer.KIND_PUBLISH, channels, messages);
+            }
+        }
+        
+        logger.info("批量消息已发布到Redis频道: {} - {} 条", channel, messages.size());
+        return messages.stream().map(MessageDTO::getId).collect(Collectors.toList());
+    }
+
+    /**
+     * 在一个pipeline中写入消息体、收件箱并发布到各自的频道
+     */
+    private void writePublishedMessages(List<MessageDTO> messages, List<byte[]> payloads, List<String> channels) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < messages.size(); i++) {
+                MessageDTO message = messages.get(i);
+                connection.stringCommands().setEx(toBytes(MESSAGE_CACHE_PREFIX + message.getId()),
+                        bodyTtlSeconds(message), payloads.get(i));
+                if (message.getReceiver() != null) {
+                    pushToInbox(connection, message.getReceiver(), message.getId());
+                }
+                connection.publish(toBytes(channels.get(i)), publishPayload(message, payloads.get(i)));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 写入本地缓冲，缓冲已满时才向调用方报错
+     */
+    private void spill(byte kind, String target, MessageDTO message) {
+        if (!messageSpillBuffer.offer(new MessageSpillBuffer.SpilledMessage(kind, target, message))) {
+            throw new RuntimeException("消息发送失败：Redis不可用且本地缓冲已满");
+        }
+    }
+
+    private void spillAll(byte kind, List<String> targets, List<MessageDTO> messages) {
+        for (int i = 0; i < messages.size(); i++) {
+            spill(kind, targets.get(i), messages.get(i));
+        }
+    }
+
+    /**
+     * 定时把本地缓冲的消息分批重放到Redis，熔断未恢复时跳过（重放本身也可作为半开状态的探测请求）
+     * 按缓冲的写入顺序取出，同一队列或频道内的消息保持原顺序；一批中队列消息先于频道消息写入
+     */
+    @Scheduled(fixedDelayString = "${redis.message.spill.replay-interval-ms:1000}")
+    public void replaySpilledMessages() {
+        while (!messageSpillBuffer.isEmpty() && redisCircuitBreaker.allowRequest()) {
+            List<MessageSpillBuffer.SpilledMessage> batch = messageSpillBuffer.drain(batchChunkSize);
+            List<MessageDTO> queued = new ArrayList<>();
+            List<String> listKeys = new ArrayList<>();
+            List<MessageDTO> published = new ArrayList<>();
+            List<String> channels = new ArrayList<>();
+            for (MessageSpillBuffer.SpilledMessage spilled : batch) {
+                if (spilled.getKind() == MessageSpillBuffer.KIND_PUBLISH) {
+                    published.add(spilled.getMessage());
+                    channels.add(spilled.getTarget());
+                } else {
+                    queued.add(spilled.getMessage());
+                    listKeys.add(spilled.getTarget());
+                }
+            }
             
-            // 缓存消息详情
-            cacheMessage(message);
+            long start = System.nanoTime();
+            try {
+                if (!queued.isEmpty()) {
+                    writeQueueMessages(queued, queued.stream().map(messageCodec::encode).collect(Collectors.toList()), listKeys);
+                }
+                if (!published.isEmpty()) {
+                    writePublishedMessages(published, published.stream().map(messageCodec::encode).collect(Collectors.toList()), channels);
+                }
+                redisCircuitBreaker.recordSuccess(System.nanoTime() - start);
+                messageSpillBuffer.acknowledge();
+                logger.info("本地缓冲消息已重放到Redis: {} 条", batch.size());
+            } catch (Exception e) {
+                redisCircuitBreaker.recordFailure();
+                // 放回原位置，下次按原顺序重放
+                messageSpillBuffer.restore();
+                logger.warn("重放本地缓冲消息失败: {}", e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * 生产者熔断及本地缓冲状态
+     */
+    public Map<String, Object> getProducerStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("circuitState", redisCircuitBreaker.getState().name());
+        status.put("spilledInMemory", messageSpillBuffer.getMemoryCount());
+        status.put("spilledFileBytes", messageSpillBuffer.getFileBytes());
+        return status;
+    }
+
+    /**
+     * 延迟发送消息到队列
+     * 消息体立即缓存（过期时间顺延到投递之后），消息ID登记到延迟ZSET，到期后由DelayedMessageScheduler移入队列。
+     * 消息的timestamp记为投递时间，ttlSeconds从投递时间起算，与消息体的过期时间一致
+     *
+     * @param deliverAtMillis 投递时间（毫秒时间戳）
+     */
+    public String scheduleToQueue(String queueName, MessageDTO message, long deliverAtMillis) {
+        return scheduleToQueue(queueName, message, deliverAtMillis, null);
+    }
+
+    /**
+     * 带幂等键的延迟发送，与即时发送共用同一队列的幂等键空间
+     */
+    public String scheduleToQueue(String queueName, MessageDTO message, long deliverAtMillis, String idempotencyKey) {
+        return sendOnce("queue:" + queueName, idempotencyKey,
+                messageId -> doScheduleToQueue(queueName, message, deliverAtMillis, messageId));
+    }
+
+    private String doScheduleToQueue(String queueName, MessageDTO message, long deliverAtMillis, String messageId) {
+        MessagePriority priority = MessagePriority.forType(message.getType());
+        long nowMillis = System.currentTimeMillis();
+        long deliverAt = Math.max(deliverAtMillis, nowMillis);
+        message.setId(messageId);
+        message.setTimestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(deliverAt), ZoneId.systemDefault()));
+        byte[] payload = messageCodec.encode(message);
+        checkPayloadSize(queueName, payload);
+        try {
+            // 向上取整，消息体不会早于消息自身的有效期过期
+            long delaySeconds = (deliverAt - nowMillis + 999) / 1000;
+            cacheMessage(message, payload, bodyTtlSeconds(message) + delaySeconds);
             
-            // 更新队列统计
+            delayedMessageScheduler.schedule(priority.queueKey(queueName), message.getId(), deliverAtMillis);
             updateQueueStats(queueName, "sent");
+            queueMetrics.recordEnqueued(queueName, 1);
             
-            logger.info("消息已发送到Redis队列: {} - {}", queueName, message.getId());
+            logger.info("延迟消息已登记: {} - {} 投递时间: {}", queueName, message.getId(), deliverAtMillis);
             return message.getId();
             
         } catch (Exception e) {
-            logger.error("发送消息到队列失败: {}", e.getMessage(), e);
+            logger.error("登记延迟消息失败: {}", e.getMessage(), e);
             throw new RuntimeException("消息发送失败", e);
         }
     }
 
+    /**
+     * 延迟指定毫秒后发送消息到队列
+     */
+    public String sendToQueueDelayed(String queueName, MessageDTO message, long delayMillis) {
+        return scheduleToQueue(queueName, message, System.currentTimeMillis() + delayMillis);
+    }
+
     /**
      * 使用Redis发布订阅发送消息
      */
-    public void publishMessage(String channel, MessageDTO message) {
+    public String publishMessage(String channel, MessageDTO message) {
+        return publishMessage(channel, message, null);
+    }
+
+    /**
+     * 带幂等键发布消息，同一频道内相同的幂等键在有效期内只会发布一次
+     */
+    public String publishMessage(String channel, MessageDTO message, String idempotencyKey) {
+        return sendOnce("channel:" + channel, idempotencyKey,
+                messageId -> doPublishMessage(channel, message, messageId));
+    }
+
+    private String doPublishMessage(String channel, MessageDTO message, String messageId) {
+        message.setId(messageId);
+        message.setTimestamp(LocalDateTime.now());
+        byte[] payload = messageCodec.encode(message);
+        checkPayloadSize(channel, payload);
+        
+        if (!redisCircuitBreaker.allowRequest()) {
+            spill(MessageSpillBuffer.KIND_PUBLISH, channel, message);
+            logger.info("Redis熔断中，消息已转入本地缓冲: {} - {}", channel, message.getId());
+            return messageId;
+        }
+        
+        long start = System.nanoTime();
         try {
-            message.setId(UUID.randomUUID().toString());
-            message.setTimestamp(LocalDateTime.now());
-            
-            String messageJson = objectMapper.writeValueAsString(message);
-            
-            // 发布到Redis频道
-            redisTemplate.convertAndSend(channel, messageJson);
-            
             // 缓存消息
-            cacheMessage(message);
+            cacheMessage(message, payload, bodyTtlSeconds(message));
+            
+            // 发布到Redis频道，复用已编码的消息体（大消息只发布引用）
+            messageRedisTemplate.convertAndSend(channel, publishPayload(message, payload));
+            redisCircuitBreaker.recordSuccess(System.nanoTime() - start);
             
             logger.info("消息已发布到Redis频道: {} - {}", channel, message.getId());
             
         } catch (Exception e) {
-            logger.error("发布消息失败: {}", e.getMessage(), e);
-            throw new RuntimeException("消息发布失败", e);
+            redisCircuitBreaker.recordFailure();
+            logger.warn("发布消息失败，转入本地缓冲: {} - {}", channel, e.getMessage());
+            spill(MessageSpillBuffer.KIND_PUBLISH, channel, message);
+        }
+        return messageId;
+    }
+
+    /**
+     * 按幂等键最多执行一次发送
+     * 先生成消息ID并用 SET NX 登记到幂等键上：登记成功才真正发送，键已存在则直接返回其中记录的消息ID；
+     * 发送失败时释放幂等键，客户端可以用同一个键重试。
+     * Redis不可用或已熔断时无法登记幂等键，直接拒绝发送（不进入本地缓冲），避免客户端重试造成重复
+     */
+    private String sendOnce(String scope, String idempotencyKey, Function<String, String> send) {
+        String messageId = idGenerator.nextIdString();
+        if (idempotencyKey == null || idempotencyKey.isEmpty()) {
+            return send.apply(messageId);
+        }
+        
+        String existing = messageDeduplicator.claim(scope, idempotencyKey, messageId);
+        if (existing != null) {
+            logger.info("重复的幂等键，返回已发送的消息: {} - {} -> {}", scope, idempotencyKey, existing);
+            return existing;
+        }
+        try {
+            return send.apply(messageId);
+        } catch (RuntimeException e) {
+            messageDeduplicator.release(scope, idempotencyKey, messageId);
+            throw e;
         }
     }
 
@@ -125,21 +650,26 @@ public class RedisMessageService {
      */
     public MessageDTO consumeFromQueue(String queueName, int timeoutSeconds) {
         try {
-            // 使用阻塞弹出从队列获取消息
-            Object result = redisTemplate.opsForList().rightPop(queueName, timeoutSeconds, TimeUnit.SECONDS);
+            // 按优先级加权轮询弹出，全部为空时阻塞等待
+            PoppedMessage popped = popByPriority(queueName, timeoutSeconds);
             
-            if (result != null) {
-                String messageJson = (String) result; // rightPop直接返回值
-                MessageDTO message = objectMapper.readValue(messageJson, MessageDTO.class);
+            if (popped != null) {
+                MessageDTO message = loadQueuedMessage(popped.messageId);
+                if (message == null || isExpired(message)) {
+                    logger.warn("消息已过期，丢弃: {} - {}", queueName, popped.messageId);
+                    queueMetrics.recordExpired(queueName);
+                    return null;
+                }
                 
                 // 移动到处理队列
-                redisTemplate.opsForList().leftPush(PROCESSING_QUEUE, messageJson);
+                stringRedisTemplate.opsForList().leftPush(PROCESSING_QUEUE, message.getId());
                 
                 // 更新统计
                 updateQueueStats(queueName, "consumed");
                 updateQueueStats(PROCESSING_QUEUE, "processing");
+                queueMetrics.recordDequeued(queueName, popped.priority, message.getTimestamp());
                 
-                logger.info("从队列消费消息: {} - {}", queueName, message.getId());
+                logger.info("从队列消费消息: {} [{}] - {}", queueName, popped.priority, message.getId());
                 return message;
             }
             
@@ -154,18 +684,26 @@ public class RedisMessageService {
      * 发送用户消息到队列
      */
     public String sendUserMessage(String receiver, String content) {
+        return sendUserMessage(receiver, content, null);
+    }
+
+    public String sendUserMessage(String receiver, String content, String idempotencyKey) {
         MessageDTO message = new MessageDTO(content, "system", "USER_MESSAGE");
         message.setReceiver(receiver);
-        return sendToQueue(USER_QUEUE, message);
+        return sendToQueue(USER_QUEUE, message, null, idempotencyKey);
     }
 
     /**
      * 发送通知消息（发布订阅模式）
      */
-    public void sendNotification(String receiver, String content) {
+    public String sendNotification(String receiver, String content) {
+        return sendNotification(receiver, content, null);
+    }
+
+    public String sendNotification(String receiver, String content, String idempotencyKey) {
         MessageDTO message = new MessageDTO(content, "system", "NOTIFICATION");
         message.setReceiver(receiver);
-        publishMessage(NOTIFICATION_CHANNEL, message);
+        return publishMessage(NOTIFICATION_CHANNEL, message, idempotencyKey);
     }
 
     /**
@@ -176,18 +714,25 @@ public class RedisMessageService {
         
         try {
             for (int i = 0; i < batchSize; i++) {
-                String messageJson = (String) redisTemplate.opsForList().rightPop(queueName);
-                if (messageJson != null) {
-                    MessageDTO message = objectMapper.readValue(messageJson, MessageDTO.class);
+                PoppedMessage popped = popByPriority(queueName, 0);
+                if (popped != null) {
+                    MessageDTO message = loadQueuedMessage(popped.messageId);
+                    if (message == null || isExpired(message)) {
+                        logger.warn("消息已过期，丢弃: {} - {}", queueName, popped.messageId);
+                        queueMetrics.recordExpired(queueName);
+                        continue;
+                    }
                     messages.add(message);
+                    queueMetrics.recordDequeued(queueName, popped.priority, message.getTimestamp());
                     
                     // 移动到处理队列
-                    redisTemplate.opsForList().leftPush(PROCESSING_QUEUE, messageJson);
+                    stringRedisTemplate.opsForList().leftPush(PROCESSING_QUEUE, message.getId());
                 } else {
                     break; // 队列为空
                 }
             }
             
+            queueStatsCollector.increment(queueName, "consumed", messages.size());
             logger.info("批量消费消息: {} 条来自队列: {}", messages.size(), queueName);
             return messages;
             
@@ -198,45 +743,207 @@ public class RedisMessageService {
     }
 
     /**
-     * 获取队列长度
+     * 按队列中弹出的元素取得消息
+     * 队列中通常是消息ID；升级前写入的元素是完整的消息JSON（外层被序列化器包成JSON字符串），直接解码，
+     * 旧数据消费完后不再出现
+     */
+    private MessageDTO loadQueuedMessage(String entry) {
+        if (!entry.isEmpty() && (entry.charAt(0) == '"' || entry.charAt(0) == '{')) {
+            MessageDTO message = messageCodec.decode(entry.getBytes(StandardCharsets.UTF_8));
+            logger.debug("消费升级前写入的队列消息: {}", message.getId());
+            return message;
+        }
+        return getMessageFromCache(entry);
+    }
+
+    /**
+     * 按加权轮询顺序弹出一条消息ID
+     * 非阻塞尝试由一个Lua脚本完成；所有子队列为空且timeoutSeconds大于0时，
+     * 用BRPOP按优先级从高到低同时等待所有子队列
+     */
+    @SuppressWarnings("unchecked")
+    private PoppedMessage popByPriority(String queueName, int timeoutSeconds) {
+        Map<String, MessagePriority> keyToPriority = new HashMap<>();
+        List<String> keys = new ArrayList<>();
+        for (MessagePriority priority : priorityPicker(queueName).nextOrder()) {
+            keys.add(priority.queueKey(queueName));
+            keyToPriority.put(priority.queueKey(queueName), priority);
+        }
+        
+        List<String> result = stringRedisTemplate.execute(POP_FIRST_SCRIPT, keys);
+        if (result != null && result.size() == 2) {
+            return new PoppedMessage(keyToPriority.get(result.get(0)), result.get(1));
+        }
+        if (timeoutSeconds <= 0) {
+            return null;
+        }
+        
+        byte[][] blockingKeys = new byte[MessagePriority.values().length][];
+        for (MessagePriority priority : MessagePriority.values()) {
+            blockingKeys[priority.ordinal()] = priority.queueKey(queueName).getBytes(StandardCharsets.UTF_8);
+        }
+        // 阻塞时间不能超过阻塞连接的命令超时
+        int waitSeconds = Math.min(timeoutSeconds, blockingMaxWaitSeconds);
+        List<byte[]> popped = blockingRedisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.listCommands().bRPop(waitSeconds, blockingKeys));
+        if (popped == null || popped.size() < 2) {
+            return null;
+        }
+        String key = new String(popped.get(0), StandardCharsets.UTF_8);
+        return new PoppedMessage(keyToPriority.get(key), new String(popped.get(1), StandardCharsets.UTF_8));
+    }
+
+    private SmoothWeightedRoundRobin<MessagePriority> priorityPicker(String queueName) {
+        return priorityPickers.computeIfAbsent(queueName, k -> {
+            MessagePriority[] priorities = MessagePriority.values();
+            int[] weights = new int[priorities.length];
+            for (MessagePriority priority : priorities) {
+                weights[priority.ordinal()] = priority.getWeight();
+            }
+            return new SmoothWeightedRoundRobin<>(Arrays.asList(priorities), weights);
+        });
+    }
+
+    /**
+     * 获取队列长度（所有优先级子队列之和）
      */
     public Long getQueueSize(String queueName) {
-        return redisTemplate.opsForList().size(queueName);
+        long total = 0;
+        for (Long size : getPrioritySizes(queueName).values()) {
+            total += size;
+        }
+        return total;
+    }
+
+    /**
+     * 各优先级子队列的长度，一次pipeline取回
+     */
+    public Map<String, Long> getPrioritySizes(String queueName) {
+        MessagePriority[] priorities = MessagePriority.values();
+        List<Object> sizes = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (MessagePriority priority : priorities) {
+                connection.listCommands().lLen(priority.queueKey(queueName).getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (MessagePriority priority : priorities) {
+            Object size = sizes.get(priority.ordinal());
+            result.put(priority.name(), size instanceof Long ? (Long) size : 0L);
+        }
+        return result;
     }
 
     /**
      * 获取队列统计信息
      */
     public Map<String, Object> getQueueStats(String queueName) {
+        Map<String, Long> counts = queueStatsCollector.getCounts(queueName, "sent", "consumed");
+        
+        Map<String, Long> prioritySizes = getPrioritySizes(queueName);
+        long queueSize = 0;
+        for (Long size : prioritySizes.values()) {
+            queueSize += size;
+        }
+        
         Map<String, Object> stats = new HashMap<>();
-        stats.put("queueSize", getQueueSize(queueName));
-        stats.put("sentCount", redisTemplate.opsForHash().get(QUEUE_STATS_PREFIX + queueName, "sent"));
-        stats.put("consumedCount", redisTemplate.opsForHash().get(QUEUE_STATS_PREFIX + queueName, "consumed"));
+        stats.put("queueSize", queueSize);
+        stats.put("prioritySizes", prioritySizes);
+        stats.put("sentCount", counts.get("sent"));
+        stats.put("consumedCount", counts.get("consumed"));
+        stats.put("nearCache", messageNearCache.getStats());
+        stats.put("producer", getProducerStatus());
         return stats;
     }
 
+    /**
+     * 检查编码（及压缩）后的消息体大小，超过队列或频道的上限时拒绝发送
+     */
+    private void checkPayloadSize(String target, byte[] payload) {
+        int maxBytes = environment.getProperty("redis.message.max-payload-bytes." + target, Integer.class, defaultMaxPayloadBytes);
+        if (maxBytes > 0 && payload.length > maxBytes) {
+            throw new IllegalArgumentException("消息体过大: " + payload.length + " 字节，" + target + " 的上限为 " + maxBytes + " 字节");
+        }
+    }
+
+    /**
+     * 消息体的过期时间：指定了ttlSeconds的消息按其有效期，否则使用默认的24小时
+     */
+    private long bodyTtlSeconds(MessageDTO message) {
+        Long ttlSeconds = message.getTtlSeconds();
+        return ttlSeconds != null && ttlSeconds > 0 ? ttlSeconds : MESSAGE_TTL_SECONDS;
+    }
+
+    /**
+     * 消息是否已超过自身的有效期（消息体可能因时钟差异仍然存在）
+     * 有效期从timestamp起算，延迟消息的timestamp为投递时间
+     */
+    boolean isExpired(MessageDTO message) {
+        Long ttlSeconds = message.getTtlSeconds();
+        return ttlSeconds != null && ttlSeconds > 0 && message.getTimestamp() != null
+                && message.getTimestamp().plusSeconds(ttlSeconds).isBefore(LocalDateTime.now());
+    }
+
+    /**
+     * 发布到频道的内容：大消息只发布引用，避免把大消息体推给每个订阅连接
+     */
+    private byte[] publishPayload(MessageDTO message, byte[] payload) {
+        if (publishReferenceThreshold > 0 && payload.length > publishReferenceThreshold) {
+            return toBytes(PUBLISH_REFERENCE_PREFIX + message.getId());
+        }
+        return payload;
+    }
+
+    /**
+     * 解码频道消息，引用形式的消息按ID读取消息体
+     */
+    private MessageDTO decodePublished(byte[] body) {
+        if (body.length > PUBLISH_REFERENCE_PREFIX_BYTES.length && Arrays.equals(body, 0, PUBLISH_REFERENCE_PREFIX_BYTES.length,
+                PUBLISH_REFERENCE_PREFIX_BYTES, 0, PUBLISH_REFERENCE_PREFIX_BYTES.length)) {
+            String messageId = new String(body, PUBLISH_REFERENCE_PREFIX_BYTES.length,
+                    body.length - PUBLISH_REFERENCE_PREFIX_BYTES.length, StandardCharsets.UTF_8);
+            return getMessageFromCache(messageId);
+        }
+        return messageCodec.decode(body);
+    }
+
     /**
      * 缓存消息
+     * 消息体只在 message:{id} 中存储一份，队列和频道都引用同一份编码后的字节
      */
-    private void cacheMessage(MessageDTO message) {
+    private void cacheMessage(MessageDTO message, byte[] payload, long ttlSeconds) {
         String cacheKey = MESSAGE_CACHE_PREFIX + message.getId();
-        redisTemplate.opsForValue().set(cacheKey, message, 24, TimeUnit.HOURS);
+        messageRedisTemplate.opsForValue().set(cacheKey, payload, ttlSeconds, TimeUnit.SECONDS);
         
-        // 添加到用户消息列表
+        // 添加到用户消息列表（有界，按需刷新过期时间）
         if (message.getReceiver() != null) {
             String userMessagesKey = USER_MESSAGES_PREFIX + message.getReceiver();
-            redisTemplate.opsForList().leftPush(userMessagesKey, message.getId());
-            redisTemplate.expire(userMessagesKey, 7, TimeUnit.DAYS);
+            stringRedisTemplate.execute(INBOX_PUSH_SCRIPT, Collections.singletonList(userMessagesKey),
+                    message.getId(), String.valueOf(inboxMaxSize),
+                    String.valueOf(inboxTtlSeconds), String.valueOf(inboxExpireRefreshSeconds));
         }
     }
 
+    /**
+     * 在pipeline中写入用户收件箱，与单条发送使用同一个脚本
+     */
+    private void pushToInbox(RedisConnection connection, String receiver, String messageId) {
+        connection.scriptingCommands().eval(INBOX_PUSH_SCRIPT_BYTES, ReturnType.INTEGER, 1,
+                toBytes(USER_MESSAGES_PREFIX + receiver), toBytes(messageId),
+                toBytes(String.valueOf(inboxMaxSize)), toBytes(String.valueOf(inboxTtlSeconds)),
+                toBytes(String.valueOf(inboxExpireRefreshSeconds)));
+    }
+
+    private static byte[] toBytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
     /**
      * 更新队列统计
+     * 只做本地累加，由QueueStatsCollector定时聚合刷入Redis
      */
     private void updateQueueStats(String queueName, String operation) {
-        String statsKey = QUEUE_STATS_PREFIX + queueName;
-        redisTemplate.opsForHash().increment(statsKey, operation, 1);
-        redisTemplate.expire(statsKey, 30, TimeUnit.DAYS);
+        queueStatsCollector.increment(queueName, operation);
     }
 
     /**
@@ -259,33 +966,205 @@ public class RedisMessageService {
 
     /**
      * 更新消息状态
+     * 状态以纯字符串存储，便于和消息体一起MGET；先记在本地，由flushStatusUpdates批量写入
      */
     private void updateMessageStatus(String messageId, String status) {
-        String statusKey = MESSAGE_CACHE_PREFIX + messageId + ":status";
-        redisTemplate.opsForValue().set(statusKey, status, 24, TimeUnit.HOURS);
+        pendingStatusUpdates.put(messageId, status);
+    }
+
+    /**
+     * 批量写入消息状态，所有SET走同一个pipeline
+     */
+    @Scheduled(fixedDelayString = "${redis.message.status.flush-interval-ms:100}")
+    public void flushStatusUpdates() {
+        if (pendingStatusUpdates.isEmpty()) {
+            return;
+        }
+        Map<String, String> batch = new HashMap<>();
+        for (String messageId : pendingStatusUpdates.keySet()) {
+            String status = pendingStatusUpdates.remove(messageId);
+            if (status != null) {
+                batch.put(messageId, status);
+            }
+        }
+        
+        try {
+            byte[] invalidatedIds = String.join(",", batch.keySet()).getBytes(StandardCharsets.UTF_8);
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                batch.forEach((messageId, status) -> connection.stringCommands().setEx(
+                        statusKey(messageId).getBytes(StandardCharsets.UTF_8), MESSAGE_TTL_SECONDS,
+                        status.getBytes(StandardCharsets.UTF_8)));
+                // 通知所有节点清除本地缓存的旧状态
+                connection.publish(toBytes(MessageNearCache.STATUS_INVALIDATION_CHANNEL), invalidatedIds);
+                return null;
+            });
+        } catch (Exception e) {
+            // 写入失败时放回，已有更新的状态优先
+            batch.forEach(pendingStatusUpdates::putIfAbsent);
+            logger.warn("批量写入消息状态失败，将在下次重试: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void flushStatusUpdatesOnShutdown() {
+        flushStatusUpdates();
     }
 
     /**
      * 获取消息状态
      */
     public String getMessageStatus(String messageId) {
-        String statusKey = MESSAGE_CACHE_PREFIX + messageId + ":status";
-        return (String) redisTemplate.opsForValue().get(statusKey);
+        String pending = pendingStatusUpdates.get(messageId);
+        if (pending != null) {
+            return pending;
+        }
+        String status = messageNearCache.getStatus(messageId);
+        if (status == null) {
+            status = decodeStatus(stringRedisTemplate.opsForValue().get(statusKey(messageId)));
+            if (status != null) {
+                messageNearCache.putStatus(messageId, status);
+            }
+        }
+        return status;
+    }
+
+    private static String statusKey(String messageId) {
+        return MESSAGE_CACHE_PREFIX + messageId + ":status";
+    }
+
+    /**
+     * 升级前的状态由JSON序列化器写入，带有外层引号，读取时去掉
+     */
+    private static String decodeStatus(String raw) {
+        if (raw != null && raw.length() >= 2 && raw.charAt(0) == '"' && raw.charAt(raw.length() - 1) == '"') {
+            return raw.substring(1, raw.length() - 1);
+        }
+        return raw;
     }
 
     /**
      * 获取缓存的消息
      */
     public MessageDTO getMessageFromCache(String messageId) {
+        // 消息体不可变，优先读本地近端缓存
+        MessageDTO cached = messageNearCache.getMessage(messageId);
+        if (cached != null) {
+            return cached;
+        }
         String cacheKey = MESSAGE_CACHE_PREFIX + messageId;
-        return (MessageDTO) redisTemplate.opsForValue().get(cacheKey);
+        byte[] payload = messageRedisTemplate.opsForValue().get(cacheKey);
+        if (payload == null) {
+            return null;
+        }
+        MessageDTO message = messageCodec.decode(payload);
+        messageNearCache.putMessage(messageId, message);
+        return message;
     }
 
     /**
      * 获取用户消息列表
      */
-    public List<Object> getUserMessages(String userId, int limit) {
+    public List<String> getUserMessages(String userId, int limit) {
         String userMessagesKey = USER_MESSAGES_PREFIX + userId;
-        return redisTemplate.opsForList().range(userMessagesKey, 0, limit - 1);
+        return stringRedisTemplate.opsForList().range(userMessagesKey, 0, Math.max(1, Math.min(limit, inboxMaxSize)) - 1);
+    }
+
+    /**
+     * 分页获取用户收件箱（完整消息）
+     * 定位游标、取一页消息ID、取回消息体和状态由一个脚本完成，只需一次往返
+     *
+     * @param cursor 上一页最后一条消息ID，为空时从最新消息开始
+     * @param limit  每页条数，限制在 [1, MAX_INBOX_PAGE_SIZE]
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> getUserInbox(String userId, String cursor, int limit, boolean includeStatus) {
+        String userMessagesKey = USER_MESSAGES_PREFIX + userId;
+        int pageSize = Math.max(1, Math.min(limit, MAX_INBOX_PAGE_SIZE));
+        
+        // 以消息ID作游标，新消息插入表头时也不会导致翻页重复
+        List<Object> result = messageRedisTemplate.execute((RedisCallback<List<Object>>) connection ->
+                connection.scriptingCommands().eval(INBOX_PAGE_SCRIPT_BYTES, ReturnType.MULTI, 1,
+                        toBytes(userMessagesKey), toBytes(cursor != null ? cursor : ""),
+                        toBytes(String.valueOf(pageSize)), toBytes(MESSAGE_CACHE_PREFIX), toBytes(":status"),
+                        toBytes(includeStatus ? "1" : "0")));
+        if (result == null || result.isEmpty()) {
+            // 游标已被裁剪或过期，视为没有更多消息
+            return inboxPage(userId, Collections.emptyList(), null);
+        }
+        
+        List<String> messageIds = new ArrayList<>();
+        for (Object id : (List<Object>) result.get(0)) {
+            messageIds.add(new String((byte[]) id, StandardCharsets.UTF_8));
+        }
+        if (messageIds.isEmpty()) {
+            return inboxPage(userId, Collections.emptyList(), null);
+        }
+        List<byte[]> values = (List<byte[]>) (List<?>) result.get(1);
+        
+        List<Map<String, Object>> items = new ArrayList<>(messageIds.size());
+        List<String> expiredIds = new ArrayList<>();
+        for (int i = 0; i < messageIds.size(); i++) {
+            byte[] payload = values != null ? values.get(i) : null;
+            if (payload == null) {
+                expiredIds.add(messageIds.get(i)); // 消息体已过期
+                continue;
+            }
+            Map<String, Object> item = new HashMap<>();
+            item.put("message", messageCodec.decode(payload));
+            if (includeStatus) {
+                byte[] status = values.get(messageIds.size() + i);
+                item.put("status", status != null ? decodeStatus(new String(status, StandardCharsets.UTF_8)) : "UNKNOWN");
+            }
+            items.add(item);
+        }
+        
+        String nextCursor = messageIds.size() == pageSize ? messageIds.get(messageIds.size() - 1) : null;
+        // 游标ID本身要保留到下一页定位完成，留待之后的读取再清理
+        expiredIds.remove(nextCursor);
+        removeExpiredInboxIds(userMessagesKey, expiredIds);
+        return inboxPage(userId, items, nextCursor);
+    }
+
+    /**
+     * 清理收件箱中消息体已过期的ID（读取时顺带清理）
+     */
+    private void removeExpiredInboxIds(String userMessagesKey, List<String> expiredIds) {
+        if (expiredIds.isEmpty()) {
+            return;
+        }
+        try {
+            byte[] key = userMessagesKey.getBytes(StandardCharsets.UTF_8);
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (String messageId : expiredIds) {
+                    connection.listCommands().lRem(key, 1, messageId.getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            });
+            logger.debug("已清理收件箱过期消息ID: {} - {} 条", userMessagesKey, expiredIds.size());
+        } catch (Exception e) {
+            logger.warn("清理收件箱过期消息ID失败: {}", e.getMessage());
+        }
+    }
+
+    private Map<String, Object> inboxPage(String userId, List<Map<String, Object>> items, String nextCursor) {
+        Map<String, Object> page = new HashMap<>();
+        page.put("userId", userId);
+        page.put("messages", items);
+        page.put("count", items.size());
+        page.put("nextCursor", nextCursor);
+        return page;
+    }
+
+    /**
+     * 弹出的消息ID及其所在优先级
+     */
+    private static class PoppedMessage {
+        private final MessagePriority priority;
+        private final String messageId;
+
+        PoppedMessage(MessagePriority priority, String messageId) {
+            this.priority = priority;
+            this.messageId = messageId;
+        }
     }
-} 
\ No newline at end of file
+}
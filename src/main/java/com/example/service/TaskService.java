@@ -1,14 +1,15 @@
 package com.example.service;
 
+import com.example.util.IdGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -19,6 +20,9 @@ public class TaskService {
     private static final Logger logger = LoggerFactory.getLogger(TaskService.class);
     private final AtomicInteger taskCounter = new AtomicInteger(0);
     
+    @Autowired
+    private IdGenerator idGenerator;
+    
     // 任务状态跟踪
     private final ConcurrentHashMap<String, TaskInfo> taskStatus = new ConcurrentHashMap<>();
     
@@ -339,8 +343,7 @@ public class TaskService {
      * 生成唯一任务ID
      */
     private String generateTaskId() {
-        return "TASK-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase() + 
-               "-" + System.currentTimeMillis();
+        return "TASK-" + idGenerator.nextIdString();
     }
     
     /**
@@ -0,0 +1,49 @@
+package com.example.service;
+
+import com.example.cache.CacheWarmer;
+import com.example.dto.UserSummary;
+import com.example.entity.User;
+import com.example.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * 邮箱缓存预热
+ * 按ID键集分页读取用户，写入与UserService.getUserByEmail相同的缓存视图
+ */
+@Component
+public class UserEmailCacheWarmer implements CacheWarmer {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Override
+    public String getCacheName() {
+        return UserService.EMAIL_CACHE;
+    }
+
+    @Override
+    public void load(int pageSize, Predicate<Map<Object, Object>> pageConsumer) {
+        long lastId = 0;
+        while (true) {
+            List<User> users = userRepository.findByIdGreaterThanOrderByIdAsc(lastId, PageRequest.of(0, pageSize));
+            if (users.isEmpty()) {
+                return;
+            }
+            Map<Object, Object> page = new LinkedHashMap<>();
+            for (User user : users) {
+                page.put(user.getEmail(), UserSummary.from(user));
+            }
+            if (!pageConsumer.test(page) || users.size() < pageSize) {
+                return;
+            }
+            lastId = users.get(users.size() - 1).getId();
+        }
+    }
+}
@@ -1,5 +1,10 @@
 package com.example.service;
 
+import com.example.cache.TwoLevelCache;
+import com.example.cache.TwoLevelCacheManager;
+import com.example.cache.UserCacheTags;
+import com.example.dto.UserIdPage;
+import com.example.dto.UserSummary;
 import com.example.entity.User;
 import com.example.repository.UserRepository;
 import com.example.repository.UserSpecifications;
@@ -7,31 +12,59 @@ import com.example.repository.UserSpecifications;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 
 @Service
 public class UserService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserService.class);
+
+    // 邮箱 -> 用户缓存
+    public static final String EMAIL_CACHE = "findUsersByEmail";
+
+    // ID -> 用户缓存，搜索和分页结果从这里批量取用户
+    public static final String DETAILS_CACHE = "userDetails";
+
+    // 搜索和分页结果缓存，只保存ID列表
+    public static final String SEARCH_CACHE = "userSearch";
+    public static final String PAGE_CACHE = "userPage";
     
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private CacheManager cacheManager;
+
     @PersistenceContext
     private EntityManager entityManager;
     
     // 创建用户
     public User createUser(User user) {
         // entityManager.persist(user);
-        return userRepository.save(user);
+        User savedUser = userRepository.save(user);
+        // 已缓存的列表、搜索和分页结果不包含新用户，不逐一清除，由这些缓存较短的过期时间兜底
+        refreshUserCaches(null, savedUser);
+        return savedUser;
     }
     
     // 获取所有用户
@@ -46,37 +79,169 @@ public class UserService {
         return userRepository.findById(id);
     }
     
-    // 根据邮箱获取用户
-    public Optional<User> getUserByEmail(String email) {
-        return userRepository.findByEmailCached(email);
+    // 根据邮箱获取用户（走缓存，返回不含密码的视图；认证请使用UserRepository.findByEmail）
+    @Cacheable(value = EMAIL_CACHE, key = "#email", sync = true)
+    public Optional<UserSummary> getUserByEmail(String email) {
+        return userRepository.findByEmail(email).map(UserSummary::from);
     }
     
     // 搜索用户
     public List<User> searchUsers(String keyword) {
         return userRepository.searchByKeyword(keyword);
     }
+
+    // 搜索用户ID（缓存有序ID列表，用户数据用getUserSummaries批量取）
+    @Cacheable(value = SEARCH_CACHE, key = "#keyword", sync = true)
+    public UserIdPage searchUserIds(String keyword) {
+        List<Long> ids = userRepository.searchIdsByKeyword(keyword);
+        return new UserIdPage(ids, ids.size());
+    }
+
+    // 分页查询用户ID（缓存当前页的ID列表和总数）
+    @Cacheable(value = PAGE_CACHE, key = "#page + ':' + #size", sync = true)
+    public UserIdPage findUserIdPage(int page, int size) {
+        Page<Long> ids = userRepository.findAllIds(PageRequest.of(page, size, Sort.by("id")));
+        return new UserIdPage(new ArrayList<>(ids.getContent()), ids.getTotalElements());
+    }
+
+    /**
+     * 按ID批量取用户视图，结果顺序与ids一致，已不存在的用户被跳过。
+     * 先从userDetails缓存批量读取（L1 getAllPresent + L2 MGET），
+     * 只有都未命中的ID用一次findAllById查询，查到的结果再用一个pipeline写回缓存
+     */
+    public List<UserSummary> getUserSummaries(List<Long> ids) {
+        TwoLevelCache cache = cacheManager instanceof TwoLevelCacheManager
+                ? ((TwoLevelCacheManager) cacheManager).getTwoLevelCache(DETAILS_CACHE) : null;
+        Map<Object, Object> found = new HashMap<>();
+        if (cache != null) {
+            try {
+                found.putAll(cache.getAll(ids));
+            } catch (Exception e) {
+                logger.warn("批量读取用户缓存失败，改为查询数据库: {}", e.getMessage());
+            }
+        }
+
+        List<Long> missing = new ArrayList<>();
+        for (Long id : ids) {
+            if (!found.containsKey(id)) {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            Map<Object, Object> loaded = new HashMap<>();
+            for (User user : userRepository.findAllById(missing)) {
+                loaded.put(user.getId(), UserSummary.from(user));
+            }
+            found.putAll(loaded);
+            if (cache != null) {
+                try {
+                    cache.putAll(loaded);
+                } catch (Exception e) {
+                    logger.warn("回写用户缓存失败: {}", e.getMessage());
+                }
+            }
+        }
+
+        List<UserSummary> users = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Object user = found.get(id);
+            if (user != null) {
+                users.add((UserSummary) user);
+            }
+        }
+        return users;
+    }
     
     // 更新用户
     public User updateUser(Long id, User userDetails) {
         Optional<User> optionalUser = userRepository.findById(id);
         if (optionalUser.isPresent()) {
             User user = optionalUser.get();
+            String oldEmail = user.getEmail();
+            String oldName = user.getName();
             user.setName(userDetails.getName());
             user.setEmail(userDetails.getEmail());
             user.setPhone(userDetails.getPhone());
-            return userRepository.save(user);
+            User savedUser = userRepository.save(user);
+            refreshUserCaches(oldEmail, savedUser);
+            List<String> tags = new ArrayList<>();
+            tags.add(UserCacheTags.user(id));
+            if (!Objects.equals(oldName, savedUser.getName()) || !Objects.equals(oldEmail, savedUser.getEmail())) {
+                // 姓名或邮箱变化后，包含该用户的搜索结果可能不再匹配
+                tags.add(UserCacheTags.userRef(id));
+            }
+            invalidateUserTags(tags);
+            return savedUser;
         }
         return null;
     }
     
     // 删除用户
     public boolean deleteUser(Long id) {
-        if (userRepository.existsById(id)) {
+        Optional<User> optionalUser = userRepository.findById(id);
+        if (optionalUser.isPresent()) {
             userRepository.deleteById(id);
+            evictUserCaches(optionalUser.get());
+            // 清除包含该用户的结果；其他分页的ID前移和总数变化由分页缓存较短的过期时间兜底
+            invalidateUserTags(Arrays.asList(UserCacheTags.user(id), UserCacheTags.userRef(id)));
             return true;
         }
         return false;
     }
+
+    /**
+     * 写库成功后同步邮箱缓存和ID缓存：邮箱变更时清除旧邮箱，再写入最新视图。
+     * 两级缓存的写入和清除会广播给其他节点，其他节点的本地缓存同时失效；
+     * 搜索和分页缓存只保存ID，用户数据变化只需更新这一个ID的条目
+     */
+    private void refreshUserCaches(String oldEmail, User user) {
+        Cache emailCache = cacheManager.getCache(EMAIL_CACHE);
+        Cache detailsCache = cacheManager.getCache(DETAILS_CACHE);
+        UserSummary summary = UserSummary.from(user);
+        try {
+            if (emailCache != null) {
+                if (oldEmail != null && !oldEmail.equals(user.getEmail())) {
+                    emailCache.evict(oldEmail);
+                }
+                emailCache.put(user.getEmail(), summary);
+            }
+            if (detailsCache != null) {
+                detailsCache.put(user.getId(), summary);
+            }
+        } catch (Exception e) {
+            // 数据库已提交，缓存更新失败不影响本次写入，旧值最迟在缓存过期后消失
+            logger.warn("更新用户缓存失败: {} - {}", user.getEmail(), e.getMessage());
+        }
+    }
+
+    /**
+     * 按标签批量清除列表、搜索和分页缓存中受影响的条目
+     */
+    private void invalidateUserTags(List<String> tags) {
+        if (!(cacheManager instanceof TwoLevelCacheManager)) {
+            return;
+        }
+        try {
+            ((TwoLevelCacheManager) cacheManager).invalidateTags(tags);
+        } catch (Exception e) {
+            logger.warn("按标签清除缓存失败: {} - {}", tags, e.getMessage());
+        }
+    }
+
+    private void evictUserCaches(User user) {
+        Cache emailCache = cacheManager.getCache(EMAIL_CACHE);
+        Cache detailsCache = cacheManager.getCache(DETAILS_CACHE);
+        try {
+            if (emailCache != null) {
+                emailCache.evict(user.getEmail());
+            }
+            if (detailsCache != null) {
+                detailsCache.evict(user.getId());
+            }
+        } catch (Exception e) {
+            logger.warn("清除用户缓存失败: {} - {}", user.getEmail(), e.getMessage());
+        }
+    }
     
     // 检查邮箱是否存在
     public boolean existsByEmail(String email) {
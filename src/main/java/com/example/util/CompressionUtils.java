@@ -0,0 +1,68 @@
+package com.example.util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate压缩工具
+ * 消息编解码和缓存序列化共用
+ */
+public final class CompressionUtils {
+
+    private CompressionUtils() {
+    }
+
+    /**
+     * 压缩后写入out
+     */
+    public static void deflate(byte[] raw, int level, ByteArrayOutputStream out) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * 解压data中从offset开始的length个字节，rawLength为压缩前的长度
+     * rawLength来自数据头，不可信：超出 [0, maxRawLength] 时不分配缓冲区直接拒绝；
+     * 压缩数据被截断或损坏时抛出异常，不会空转
+     *
+     * @throws IllegalArgumentException 长度非法或数据无法解压
+     */
+    public static byte[] inflate(byte[] data, int offset, int length, int rawLength, int maxRawLength) {
+        if (rawLength < 0 || rawLength > maxRawLength) {
+            throw new IllegalArgumentException("压缩前长度非法: " + rawLength + "，上限 " + maxRawLength);
+        }
+        byte[] raw = new byte[rawLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, offset, length);
+            int written = 0;
+            while (written < rawLength && !inflater.finished()) {
+                int n = inflater.inflate(raw, written, rawLength - written);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("压缩数据不完整");
+                }
+                written += n;
+            }
+            if (written != rawLength) {
+                throw new IllegalArgumentException("压缩数据长度不符");
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("压缩数据解压失败", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
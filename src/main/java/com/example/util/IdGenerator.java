@@ -0,0 +1,241 @@
+package com.example.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按时间有序的唯一ID生成器（Snowflake结构）
+ *
+ * 64位ID = 41位毫秒时间戳（自2024-01-01起） + 10位节点ID + 12位序列号。
+ * 通过CAS无锁生成，同一节点内严格单调递增；同一毫秒序列号用尽或时钟回拨时
+ * 沿用逻辑时间继续递增，不会阻塞等待。
+ * 字符串形式为13位定长Crockford Base32，字典序与数值顺序一致，可直接用于范围查询
+ *
+ * 节点ID必须在集群内唯一，否则两个节点会生成相同的ID：配置了app.node-id时直接使用；
+ * 未配置时启动阶段通过Redis INCR轮转取号，并用 SET NX 占用 id-node:{节点ID} 租约，
+ * 运行期间定时续期、关闭时释放。租约因Redis长时间不可用而被其他节点占用时重新取号。
+ * 启动时Redis不可用（或节点ID已全部被占用）不会阻止启动：先用主机名推导的节点ID并输出WARN，
+ * 这期间与其他节点存在冲突的可能；续期任务在后台重试取号，成功后切换到租约分配的节点ID
+ */
+@Component
+public class IdGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdGenerator.class);
+
+    private static final long EPOCH = 1704067200000L; // 2024-01-01T00:00:00Z
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+
+    private static final char[] BASE32 = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final int STRING_LENGTH = 13;
+
+    private static final String NODE_SEQUENCE_KEY = "id-node:seq";
+    private static final String NODE_LEASE_PREFIX = "id-node:";
+
+    // 租约仍属于自己时续期；已过期时重新占用；被其他节点占用时返回0
+    private static final DefaultRedisScript<Long> RENEW_LEASE_SCRIPT = new DefaultRedisScript<>(
+            "local v = redis.call('GET', KEYS[1]) " +
+            "if v == ARGV[1] then redis.call('PEXPIRE', KEYS[1], ARGV[2]) return 1 end " +
+            "if not v then redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2]) return 1 end " +
+            "return 0", Long.class);
+
+    // 只释放自己持有的租约
+    private static final DefaultRedisScript<Long> RELEASE_LEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end " +
+            "return 0", Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    // 显式配置的节点ID（0-1023），-1 表示通过Redis分配
+    @Value("${app.node-id:-1}")
+    private long configuredNodeId;
+
+    @Value("${app.node-lease.ttl-ms:60000}")
+    private long leaseMillis;
+
+    // 本实例持有租约的标识
+    private final String leaseToken = UUID.randomUUID().toString();
+
+    private volatile long nodeId = -1;
+
+    // 节点ID是否来自Redis租约（需要续期和释放）
+    private volatile boolean leased;
+
+    // 高位为逻辑时间戳，低SEQUENCE_BITS位为序列号
+    private final AtomicLong state = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        if (configuredNodeId >= 0) {
+            if (configuredNodeId > MAX_NODE_ID) {
+                throw new IllegalArgumentException("app.node-id 超出范围 0-" + MAX_NODE_ID + ": " + configuredNodeId);
+            }
+            nodeId = configuredNodeId;
+            logger.info("ID生成器节点ID: {}", nodeId);
+            return;
+        }
+        try {
+            nodeId = allocateNodeId();
+            leased = true;
+            logger.info("ID生成器节点ID: {}（Redis租约）", nodeId);
+        } catch (Exception e) {
+            nodeId = derivedNodeId();
+            logger.warn("无法通过Redis分配节点ID，暂用主机名推导的节点ID {}，可能与其他节点冲突，将在后台重试: {}",
+                    nodeId, e.getMessage());
+        }
+    }
+
+    /**
+     * 生成下一个数值ID
+     */
+    public long nextId() {
+        while (true) {
+            long current = state.get();
+            long now = System.currentTimeMillis() - EPOCH;
+            long next = now > (current >>> SEQUENCE_BITS) ? now << SEQUENCE_BITS : current + 1;
+            if (state.compareAndSet(current, next)) {
+                long timestamp = next >>> SEQUENCE_BITS;
+                long sequence = next & ((1L << SEQUENCE_BITS) - 1);
+                return (timestamp << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | sequence;
+            }
+        }
+    }
+
+    /**
+     * 生成下一个字符串ID（13位，可按字典序排序）
+     */
+    public String nextIdString() {
+        return toString(nextId());
+    }
+
+    /**
+     * 数值ID转为定长Base32字符串
+     */
+    public static String toString(long id) {
+        char[] chars = new char[STRING_LENGTH];
+        for (int i = STRING_LENGTH - 1; i >= 0; i--) {
+            chars[i] = BASE32[(int) (id & 0x1F)];
+            id >>>= 5;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Base32字符串还原为数值ID，格式不符（例如旧的UUID）时返回-1
+     */
+    public static long parse(String id) {
+        if (id == null || id.length() != STRING_LENGTH) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < STRING_LENGTH; i++) {
+            int digit = Arrays.binarySearch(BASE32, id.charAt(i));
+            if (digit < 0) {
+                return -1;
+            }
+            value = (value << 5) | digit;
+        }
+        return value;
+    }
+
+    /**
+     * 从ID中取出生成时间（毫秒时间戳）
+     */
+    public static long extractTimestamp(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH;
+    }
+
+    /**
+     * 定时续期节点ID租约；租约已被其他节点占用时改用新分配的节点ID。
+     * 启动时未能取得租约的节点在这里重试取号。
+     * Redis暂不可用时只记录日志，恢复后的下一次续期会重新占用
+     */
+    @Scheduled(fixedDelayString = "${app.node-lease.renew-interval-ms:20000}")
+    public void renewLease() {
+        if (configuredNodeId >= 0) {
+            return;
+        }
+        if (!leased) {
+            try {
+                long previous = nodeId;
+                nodeId = allocateNodeId();
+                leased = true;
+                logger.info("已通过Redis分配节点ID，节点ID由 {} 改为 {}", previous, nodeId);
+            } catch (Exception e) {
+                logger.debug("重试分配节点ID失败: {}", e.getMessage());
+            }
+            return;
+        }
+        try {
+            Long renewed = stringRedisTemplate.execute(RENEW_LEASE_SCRIPT,
+                    Collections.singletonList(NODE_LEASE_PREFIX + nodeId), leaseToken, String.valueOf(leaseMillis));
+            if (renewed == null || renewed == 0) {
+                long previous = nodeId;
+                nodeId = allocateNodeId();
+                logger.warn("节点ID租约已被其他节点占用，节点ID由 {} 改为 {}", previous, nodeId);
+            }
+        } catch (Exception e) {
+            logger.warn("续期节点ID租约失败: {} - {}", nodeId, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void releaseLease() {
+        if (!leased) {
+            return;
+        }
+        try {
+            stringRedisTemplate.execute(RELEASE_LEASE_SCRIPT,
+                    Collections.singletonList(NODE_LEASE_PREFIX + nodeId), leaseToken);
+        } catch (Exception e) {
+            logger.warn("释放节点ID租约失败: {} - {}", nodeId, e.getMessage());
+        }
+    }
+
+    /**
+     * 通过INCR轮转取号，占用第一个空闲的节点ID；全部被占用或Redis不可用时抛出异常
+     */
+    private long allocateNodeId() {
+        for (int attempt = 0; attempt <= MAX_NODE_ID; attempt++) {
+            Long sequence = stringRedisTemplate.opsForValue().increment(NODE_SEQUENCE_KEY);
+            if (sequence == null) {
+                break;
+            }
+            long candidate = (sequence - 1) & MAX_NODE_ID;
+            Boolean acquired = stringRedisTemplate.opsForValue().setIfAbsent(
+                    NODE_LEASE_PREFIX + candidate, leaseToken, Duration.ofMillis(leaseMillis));
+            if (Boolean.TRUE.equals(acquired)) {
+                return candidate;
+            }
+        }
+        throw new IllegalStateException("节点ID已全部被占用");
+    }
+
+    /**
+     * 无法通过Redis分配时根据主机名推导的临时节点ID
+     */
+    private static long derivedNodeId() {
+        try {
+            return InetAddress.getLocalHost().getHostName().hashCode() & MAX_NODE_ID;
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按key保序的有界执行器
+ * 同一个key的任务总是落到同一条单线程通道上按提交顺序执行，不同key之间并行；
+ * 通道队列满时拒绝新任务并计数，由提交方决定如何处理。提交方通常是Redis客户端的I/O线程，
+ * 不能在提交时阻塞：排队中的任务可能正等待同一I/O线程上的Redis响应，阻塞会造成死锁
+ */
+public class KeyedOrderedExecutor {
+
+    private final ThreadPoolExecutor[] lanes;
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    public KeyedOrderedExecutor(String threadNamePrefix, int laneCount, int queueCapacity) {
+        this.lanes = new ThreadPoolExecutor[laneCount];
+        AtomicInteger threadIndex = new AtomicInteger();
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity),
+                    r -> {
+                        Thread thread = new Thread(r, threadNamePrefix + threadIndex.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    new ThreadPoolExecutor.AbortPolicy());
+        }
+    }
+
+    /**
+     * 提交任务，相同key的任务按提交顺序串行执行；不会阻塞调用线程
+     *
+     * @return 通道队列已满或执行器已关闭时返回false，任务未被执行
+     */
+    public boolean execute(Object key, Runnable task) {
+        try {
+            lanes[Math.floorMod(key.hashCode(), lanes.length)].execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * 所有通道中排队等待的任务数
+     */
+    public int getQueuedTaskCount() {
+        int queued = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            queued += lane.getQueue().size();
+        }
+        return queued;
+    }
+
+    /**
+     * 因通道队列已满而被拒绝的任务总数
+     */
+    public long getRejectedTaskCount() {
+        return rejected.get();
+    }
+
+    public void shutdown() {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 平滑加权轮询（与Nginx upstream相同的算法）
+ * 权重 6:3:1 时会得到 A B A A B A C A B A 这样交错的序列，而不是连续的一长串A
+ */
+public class SmoothWeightedRoundRobin<T> {
+
+    private final List<T> items;
+    private final int[] weights;
+    private final int[] currentWeights;
+    private final int totalWeight;
+
+    public SmoothWeightedRoundRobin(List<T> items, int[] weights) {
+        if (items.size() != weights.length) {
+            throw new IllegalArgumentException("权重数量与元素数量不一致");
+        }
+        this.items = new ArrayList<>(items);
+        this.weights = weights.clone();
+        this.currentWeights = new int[weights.length];
+        int total = 0;
+        for (int weight : weights) {
+            total += weight;
+        }
+        this.totalWeight = total;
+    }
+
+    /**
+     * 选出下一个元素
+     */
+    public synchronized T next() {
+        int best = 0;
+        for (int i = 0; i < weights.length; i++) {
+            currentWeights[i] += weights[i];
+            if (currentWeights[i] > currentWeights[best]) {
+                best = i;
+            }
+        }
+        currentWeights[best] -= totalWeight;
+        return items.get(best);
+    }
+
+    /**
+     * 本轮的尝试顺序：先是轮询选中的元素，其余按原有顺序排在后面
+     */
+    public List<T> nextOrder() {
+        T first = next();
+        List<T> order = new ArrayList<>(items.size());
+        order.add(first);
+        for (T item : items) {
+            if (item != first) {
+                order.add(item);
+            }
+        }
+        return order;
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.cache;
+
+import com.example.config.RedisCacheConfig;
+import com.example.dto.UserIdPage;
+import com.example.dto.UserSummary;
+import com.example.entity.Permission;
+import com.example.entity.User;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CacheValueSerializer 测试和性能测试共用的序列化器与缓存值
+ * 序列化器使用与RedisCacheConfig相同的ObjectMapper配置
+ */
+final class CacheValueFixtures {
+
+    // 与 cache.serializer.compression.* 的默认值一致
+    private static final int COMPRESSION_THRESHOLD = 2048;
+    private static final int COMPRESSION_LEVEL = 1;
+    private static final int MAX_INFLATED_BYTES = 16 * 1024 * 1024;
+
+    static final ObjectMapper SMILE_MAPPER = RedisCacheConfig.smileCacheMapper();
+
+    private CacheValueFixtures() {
+    }
+
+    static GenericJackson2JsonRedisSerializer json() {
+        return new GenericJackson2JsonRedisSerializer(RedisCacheConfig.jsonCacheMapper());
+    }
+
+    static RedisSerializer<Object> typed(Class<?> type) {
+        return typed(SMILE_MAPPER.constructType(type));
+    }
+
+    static RedisSerializer<Object> typed(JavaType type) {
+        return new CacheValueSerializer(SMILE_MAPPER, type, json(), COMPRESSION_THRESHOLD, COMPRESSION_LEVEL,
+                MAX_INFLATED_BYTES);
+    }
+
+    static JavaType mapType() {
+        return SMILE_MAPPER.getTypeFactory().constructMapType(Map.class, String.class, Object.class);
+    }
+
+    static UserSummary summary(long id) {
+        User user = new User();
+        user.setId(id);
+        user.setName("用户" + id);
+        user.setEmail("user" + id + "@example.com");
+        user.setPhone("1380000" + String.format("%04d", id));
+        user.setRoles(new HashSet<>(Arrays.asList(User.Role.USER, User.Role.MODERATOR)));
+        user.setPermissions(new HashSet<>(Arrays.asList(
+                new Permission("READ_USER", "查看用户"), new Permission("WRITE_USER", "修改用户"))));
+        user.setEnabled(true);
+        user.setCreatedAt(LocalDateTime.of(2024, 1, 1, 8, 0).plusMinutes(id));
+        user.setUpdatedAt(LocalDateTime.of(2024, 6, 1, 8, 0).plusMinutes(id));
+        return UserSummary.from(user);
+    }
+
+    static UserIdPage idPage(int size) {
+        List<Long> ids = new ArrayList<>();
+        for (long i = 0; i < size; i++) {
+            ids.add(100000 + i * 3);
+        }
+        return new UserIdPage(ids, size * 4L);
+    }
+
+    /**
+     * userList缓存的值：含users和count字段的Map
+     */
+    static Map<String, Object> userList(int size) {
+        Map<String, Object> userList = new HashMap<>();
+        List<UserSummary> users = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            users.add(summary(i));
+        }
+        userList.put("users", users);
+        userList.put("count", users.size());
+        return userList;
+    }
+}
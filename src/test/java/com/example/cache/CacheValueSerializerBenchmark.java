@@ -0,0 +1,57 @@
+package com.example.cache;
+
+import com.example.dto.UserIdPage;
+import com.example.dto.UserSummary;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import static com.example.cache.CacheValueFixtures.idPage;
+import static com.example.cache.CacheValueFixtures.mapType;
+import static com.example.cache.CacheValueFixtures.summary;
+import static com.example.cache.CacheValueFixtures.typed;
+import static com.example.cache.CacheValueFixtures.userList;
+
+/**
+ * CacheValueSerializer 与 GenericJackson2JsonRedisSerializer 的吞吐量对比（编码+解码算一次）
+ * 结果受运行环境影响，只写日志不做断言；默认构建不运行，使用 mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+class CacheValueSerializerBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheValueSerializerBenchmark.class);
+
+    private final GenericJackson2JsonRedisSerializer json = CacheValueFixtures.json();
+
+    @Test
+    void roundTripThroughput() {
+        compare("userDetails(UserSummary)", typed(UserSummary.class), summary(1), 20000);
+        compare("userSearch(UserIdPage, 50)", typed(UserIdPage.class), idPage(50), 20000);
+        compare("userList(200 users)", typed(mapType()), userList(200), 200);
+    }
+
+    private void compare(String label, RedisSerializer<Object> typed, Object value, int iterations) {
+        CacheEntry entry = new CacheEntry(value, System.currentTimeMillis(), 15L);
+        int jsonSize = json.serialize(entry).length;
+        int typedSize = typed.serialize(entry).length;
+
+        // 预热后各计时一轮
+        roundTrips(json, entry, iterations);
+        roundTrips(typed, entry, iterations);
+        double jsonOps = roundTrips(json, entry, iterations);
+        double typedOps = roundTrips(typed, entry, iterations);
+        logger.info(String.format("%-28s json %7d B %10.0f ops/s | typed %7d B %10.0f ops/s",
+                label, jsonSize, jsonOps, typedSize, typedOps));
+    }
+
+    private static double roundTrips(RedisSerializer<Object> serializer, CacheEntry entry, int iterations) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            serializer.deserialize(serializer.serialize(entry));
+        }
+        return iterations / ((System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.cache;
+
+import com.example.dto.UserIdPage;
+import com.example.dto.UserSummary;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.Arrays;
+
+import static com.example.cache.CacheValueFixtures.idPage;
+import static com.example.cache.CacheValueFixtures.mapType;
+import static com.example.cache.CacheValueFixtures.summary;
+import static com.example.cache.CacheValueFixtures.typed;
+import static com.example.cache.CacheValueFixtures.userList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * CacheValueSerializer 与原来的 GenericJackson2JsonRedisSerializer 对比
+ * 值为缓存中实际保存的CacheEntry；吞吐量对比见 CacheValueSerializerBenchmark
+ */
+class CacheValueSerializerTest {
+
+    private final GenericJackson2JsonRedisSerializer json = CacheValueFixtures.json();
+
+    @Test
+    void roundTripsRegisteredTypes() {
+        UserSummary summary = summary(1);
+        CacheEntry entry = (CacheEntry) typed(UserSummary.class).deserialize(
+                typed(UserSummary.class).serialize(new CacheEntry(summary, 1000L, 12L)));
+        UserSummary read = (UserSummary) entry.getValue();
+        assertEquals(summary.getEmail(), read.getEmail());
+        assertEquals(summary.getRoles(), read.getRoles());
+        assertEquals(summary.getPermissions(), read.getPermissions());
+        assertEquals(summary.getCreatedAt(), read.getCreatedAt());
+        assertEquals(1000L, entry.getWrittenAt());
+        assertEquals(12L, entry.getLoadMillis());
+
+        UserIdPage page = idPage(5000);
+        UserIdPage readPage = (UserIdPage) ((CacheEntry) typed(UserIdPage.class).deserialize(
+                typed(UserIdPage.class).serialize(new CacheEntry(page, 1000L, 0L)))).getValue();
+        assertEquals(page.getIds(), readPage.getIds());
+        assertEquals(page.getTotal(), readPage.getTotal());
+    }
+
+    @Test
+    void readsEntriesWrittenByTheJsonSerializer() {
+        byte[] legacy = json.serialize(new CacheEntry(summary(7), 1000L, 3L));
+        Object read = typed(UserSummary.class).deserialize(legacy);
+        assertInstanceOf(CacheEntry.class, read);
+        assertEquals("user7@example.com", ((UserSummary) ((CacheEntry) read).getValue()).getEmail());
+    }
+
+    @Test
+    void rejectsTruncatedCompressedValue() {
+        byte[] bytes = typed(UserIdPage.class).serialize(new CacheEntry(idPage(5000), 1000L, 0L));
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length / 2);
+        assertThrows(SerializationException.class, () -> typed(UserIdPage.class).deserialize(truncated));
+    }
+
+    @Test
+    void smallerThanGenericJackson2Json() {
+        assertSmaller(typed(UserSummary.class), summary(1));
+        assertSmaller(typed(UserIdPage.class), idPage(50));
+        assertSmaller(typed(mapType()), userList(200));
+    }
+
+    private void assertSmaller(RedisSerializer<Object> typed, Object value) {
+        CacheEntry entry = new CacheEntry(value, System.currentTimeMillis(), 15L);
+        int jsonSize = json.serialize(entry).length;
+        int typedSize = typed.serialize(entry).length;
+        assertTrue(typedSize < jsonSize, value.getClass().getSimpleName() + ": " + typedSize + " >= " + jsonSize);
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * TwoLevelCache 单飞加载
+ * L2用内存中的ConcurrentMapCache代替Redis，关闭分布式租约，只验证节点内的合并
+ */
+class TwoLevelCacheTest {
+
+    private static final int THREADS = 16;
+
+    private ExecutorService executor;
+    private TwoLevelCache cache;
+
+    @BeforeEach
+    void setUp() {
+        TwoLevelCacheManager manager = new TwoLevelCacheManager(new ConcurrentMapCacheManager("users"),
+                Collections.emptyMap(), new TwoLevelCacheManager.CacheSpec(100, Duration.ofMinutes(1)),
+                mock(StringRedisTemplate.class), "cache:invalidation");
+        manager.afterPropertiesSet();
+        cache = manager.getTwoLevelCache("users");
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentMissesLoadOnce() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch loaderEntered = new CountDownLatch(1);
+
+        List<Future<Object>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return cache.get(1L, () -> {
+                    loads.incrementAndGet();
+                    loaderEntered.countDown();
+                    // 加载期间保持未完成，让其他线程都落到同一个加载上
+                    Thread.sleep(200);
+                    return new Object();
+                });
+            }));
+        }
+        start.countDown();
+        assertTrue(loaderEntered.await(5, TimeUnit.SECONDS));
+
+        Object first = results.get(0).get(5, TimeUnit.SECONDS);
+        for (Future<Object> result : results) {
+            assertSame(first, result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void concurrentMissesShareLoaderFailure() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Future<Object>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return cache.get(2L, () -> {
+                    loads.incrementAndGet();
+                    Thread.sleep(200);
+                    throw new IllegalStateException("数据库不可用");
+                });
+            }));
+        }
+        start.countDown();
+
+        for (Future<Object> result : results) {
+            Exception e = assertThrows(Exception.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof Cache.ValueRetrievalException);
+        }
+        assertEquals(1, loads.get());
+
+        // 失败不会被缓存，下一次访问重新加载
+        assertEquals("ok", cache.get(2L, () -> {
+            loads.incrementAndGet();
+            return "ok";
+        }));
+        assertEquals(2, loads.get());
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.service;
+
+import com.example.codec.BinaryMessageCodec;
+import com.example.dto.MessageDTO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * MessageSpillBuffer 的重放顺序与缓冲文件的校验
+ */
+class MessageSpillBufferTest {
+
+    @TempDir
+    Path dir;
+
+    private final List<MessageSpillBuffer> opened = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (MessageSpillBuffer buffer : opened) {
+            buffer.close();
+        }
+    }
+
+    @Test
+    void drainsInWriteOrderAcrossMemoryAndFile() throws IOException {
+        MessageSpillBuffer buffer = open(2);
+        offer(buffer, 1, 2, 3, 4);          // 1,2 在内存，3,4 在文件
+        assertEquals(List.of("1"), ids(buffer.drain(1)));
+        buffer.acknowledge();
+        offer(buffer, 5);                   // 文件中仍有数据，追加到文件而不是内存
+        assertEquals(List.of("2", "3", "4", "5"), ids(buffer.drain(10)));
+        buffer.acknowledge();
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    void restorePutsFailedBatchBackInFront() throws IOException {
+        MessageSpillBuffer buffer = open(2);
+        offer(buffer, 1, 2, 3);
+        assertEquals(List.of("1", "2", "3"), ids(buffer.drain(10)));
+        offer(buffer, 4);                   // 重放期间写入的新消息
+        buffer.restore();
+        assertEquals(List.of("1", "2", "3", "4"), ids(buffer.drain(10)));
+    }
+
+    @Test
+    void survivesReopenAndTruncatesTornRecord() throws IOException {
+        Path file = dir.resolve("spill.dat");
+        MessageSpillBuffer buffer = open(0, file);
+        offer(buffer, 1, 2);
+        buffer.close();
+        opened.remove(buffer);
+
+        // 模拟写到一半异常退出：写位置越过了最后一条记录的实际长度
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            long writePos = raf.readLong();
+            raf.seek(0);
+            raf.writeLong(writePos + 100);
+        }
+
+        MessageSpillBuffer reopened = open(0, file);
+        assertEquals(List.of("1", "2"), ids(reopened.drain(10)));
+        reopened.acknowledge();
+        assertTrue(reopened.isEmpty());
+    }
+
+    @Test
+    void discardsFileWithInvalidHeader() throws IOException {
+        Path file = dir.resolve("spill.dat");
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.writeLong(8);               // 写位置小于读位置
+            raf.writeLong(64);
+        }
+        MessageSpillBuffer buffer = open(0, file);
+        assertTrue(buffer.isEmpty());
+        offer(buffer, 1);
+        assertEquals(List.of("1"), ids(buffer.drain(10)));
+    }
+
+    private MessageSpillBuffer open(int memoryCapacity) throws IOException {
+        return open(memoryCapacity, dir.resolve("spill.dat"));
+    }
+
+    private MessageSpillBuffer open(int memoryCapacity, Path file) throws IOException {
+        MessageSpillBuffer buffer = new MessageSpillBuffer();
+        ReflectionTestUtils.setField(buffer, "messageCodec", new BinaryMessageCodec());
+        ReflectionTestUtils.setField(buffer, "memoryCapacity", memoryCapacity);
+        ReflectionTestUtils.setField(buffer, "filePath", file.toString());
+        ReflectionTestUtils.setField(buffer, "fileSizeMb", 1);
+        buffer.init();
+        opened.add(buffer);
+        return buffer;
+    }
+
+    private static void offer(MessageSpillBuffer buffer, int... ids) {
+        for (int id : ids) {
+            MessageDTO message = new MessageDTO("m" + id, "system", "USER_MESSAGE");
+            message.setId(String.valueOf(id));
+            assertTrue(buffer.offer(new MessageSpillBuffer.SpilledMessage(MessageSpillBuffer.KIND_QUEUE, "queue:test", message)));
+        }
+    }
+
+    private static List<String> ids(List<MessageSpillBuffer.SpilledMessage> drained) {
+        List<String> ids = new ArrayList<>();
+        for (MessageSpillBuffer.SpilledMessage spilled : drained) {
+            ids.add(spilled.getMessage().getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * QueueStatsCollector 本地计数的队列数上限与空闲回收
+ */
+class QueueStatsCollectorTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void writesDirectlyOnceQueueCapIsReached() {
+        StringRedisTemplate redis = mock(StringRedisTemplate.class);
+        HashOperations<String, Object, Object> hash = mock(HashOperations.class);
+        when(redis.opsForHash()).thenReturn(hash);
+        QueueStatsCollector collector = collector(redis, 1, 600000L);
+
+        collector.increment("queue:a", "sent", 1);
+        collector.increment("queue:b", "sent", 1);
+
+        verify(hash, never()).increment("stats:queue:queue:a", "sent", 1L);
+        verify(hash).increment("stats:queue:queue:b", "sent", 1L);
+        assertEquals(1, pending(collector).size());
+    }
+
+    @Test
+    void evictsIdleQueuesAfterFinalFlush() {
+        StringRedisTemplate redis = mock(StringRedisTemplate.class);
+        QueueStatsCollector collector = collector(redis, 10, 0L);
+
+        collector.increment("queue:a", "sent", 1);
+        collector.flush();                   // 有增量：写入Redis，保留
+        assertTrue(pending(collector).containsKey("queue:a"));
+        collector.flush();                   // 没有新增量：移出本地
+        assertFalse(pending(collector).containsKey("queue:a"));
+        verify(redis, times(1)).executePipelined(any(RedisCallback.class));
+    }
+
+    private static QueueStatsCollector collector(StringRedisTemplate redis, int maxQueues, long idleEvictMillis) {
+        QueueStatsCollector collector = new QueueStatsCollector();
+        ReflectionTestUtils.setField(collector, "stringRedisTemplate", redis);
+        ReflectionTestUtils.setField(collector, "maxQueues", maxQueues);
+        ReflectionTestUtils.setField(collector, "idleEvictMillis", idleEvictMillis);
+        return collector;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, ?> pending(QueueStatsCollector collector) {
+        return (Map<String, ?>) ReflectionTestUtils.getField(collector, "pending");
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.service;
+
+import com.example.codec.BinaryMessageCodec;
+import com.example.codec.MessageCodec;
+import com.example.dto.MessageDTO;
+import com.example.dto.MessagePriority;
+import com.example.util.CircuitBreaker;
+import com.example.util.IdGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * RedisMessageService 延迟消息的有效期与流式批量发送的错误处理
+ * Redis相关的依赖全部mock
+ */
+class RedisMessageServiceTest {
+
+    private final MessageCodec codec = new BinaryMessageCodec();
+
+    private RedisMessageService service;
+    private ValueOperations<String, byte[]> valueOperations;
+    private DelayedMessageScheduler delayedMessageScheduler;
+    private StringRedisTemplate stringRedisTemplate;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        RedisTemplate<String, byte[]> messageRedisTemplate = mock(RedisTemplate.class);
+        valueOperations = mock(ValueOperations.class);
+        when(messageRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        IdGenerator idGenerator = mock(IdGenerator.class);
+        when(idGenerator.nextIdString()).thenReturn("0000000000001");
+        delayedMessageScheduler = mock(DelayedMessageScheduler.class);
+
+        service = new RedisMessageService();
+        ReflectionTestUtils.setField(service, "messageRedisTemplate", messageRedisTemplate);
+        ReflectionTestUtils.setField(service, "messageCodec", codec);
+        ReflectionTestUtils.setField(service, "idGenerator", idGenerator);
+        ReflectionTestUtils.setField(service, "environment", new MockEnvironment());
+        ReflectionTestUtils.setField(service, "delayedMessageScheduler", delayedMessageScheduler);
+        ReflectionTestUtils.setField(service, "queueStatsCollector", mock(QueueStatsCollector.class));
+        ReflectionTestUtils.setField(service, "queueMetrics", mock(QueueMetrics.class));
+
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        CircuitBreaker circuitBreaker = mock(CircuitBreaker.class);
+        when(circuitBreaker.allowRequest()).thenReturn(true);
+        ReflectionTestUtils.setField(service, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(service, "redisCircuitBreaker", circuitBreaker);
+        ReflectionTestUtils.setField(service, "objectMapper", new ObjectMapper().findAndRegisterModules());
+        ReflectionTestUtils.setField(service, "batchChunkSize", 2);
+    }
+
+    @Test
+    void delayLongerThanTtlIsNotExpiredOnDelivery() {
+        MessageDTO message = new MessageDTO("hi", "system", "USER_MESSAGE");
+        message.setTtlSeconds(30L);
+        long deliverAt = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(2);
+
+        String messageId = service.scheduleToQueue("queue:test", message, deliverAt);
+
+        ArgumentCaptor<byte[]> payload = ArgumentCaptor.forClass(byte[].class);
+        ArgumentCaptor<Long> bodyTtl = ArgumentCaptor.forClass(Long.class);
+        verify(valueOperations).set(eq("message:" + messageId), payload.capture(), bodyTtl.capture(), eq(TimeUnit.SECONDS));
+        verify(delayedMessageScheduler).schedule(eq(MessagePriority.forType("USER_MESSAGE").queueKey("queue:test")),
+                eq(messageId), eq(deliverAt));
+        // 消息体保留到投递之后再加上消息自身的有效期
+        assertTrue(bodyTtl.getValue() >= 150, "body ttl " + bodyTtl.getValue());
+
+        // 有效期从投递时间起算：投递时刻仍剩余完整的30秒
+        MessageDTO delivered = codec.decode(payload.getValue());
+        LocalDateTime deliveredAt = LocalDateTime.ofInstant(Instant.ofEpochMilli(deliverAt), ZoneId.systemDefault());
+        assertTrue(delivered.getTimestamp().plusSeconds(30).isAfter(deliveredAt.plusSeconds(29)));
+        assertFalse(service.isExpired(delivered));
+
+        // 投递后超过有效期才过期
+        delivered.setTimestamp(LocalDateTime.now().minusSeconds(31));
+        assertTrue(service.isExpired(delivered));
+    }
+
+    @Test
+    void deliverTimeInThePastUsesNow() {
+        MessageDTO message = new MessageDTO("hi", "system", "USER_MESSAGE");
+        message.setTtlSeconds(30L);
+
+        service.scheduleToQueue("queue:test", message, System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(5));
+
+        ArgumentCaptor<byte[]> payload = ArgumentCaptor.forClass(byte[].class);
+        verify(valueOperations).set(eq("message:0000000000001"), payload.capture(), anyLong(), eq(TimeUnit.SECONDS));
+        assertFalse(service.isExpired(codec.decode(payload.getValue())));
+    }
+
+    @Test
+    void streamedBatchReportsSentCountOnNonObjectElement() {
+        String body = "[{\"content\":\"a\"},{\"content\":\"b\"},{\"content\":\"c\"},5,{\"content\":\"d\"}]";
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> service.sendBatch("queue:test", stream(body)));
+
+        // 第一块（2条）已写入，第3条还在未发送的块中
+        assertTrue(e.getMessage().contains("第 4 个元素"), e.getMessage());
+        assertTrue(e.getMessage().contains("已发送 2 条"), e.getMessage());
+        verify(stringRedisTemplate, times(1)).executePipelined(any(RedisCallback.class));
+    }
+
+    @Test
+    void streamedBatchReportsSentCountOnMalformedElement() {
+        String body = "[{\"content\":\"a\"},{\"content\":\"b\"},{\"ttlSeconds\":\"x\"}]";
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> service.sendBatch("queue:test", stream(body)));
+        assertTrue(e.getMessage().contains("第 3 个元素格式错误"), e.getMessage());
+        assertTrue(e.getMessage().contains("已发送 2 条"), e.getMessage());
+    }
+
+    @Test
+    void streamedBatchRejectsTruncatedArray() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> service.sendBatch("queue:test", stream("[{\"content\":\"a\"}")));
+        assertTrue(e.getMessage().contains("已发送 0 条"), e.getMessage());
+    }
+
+    @Test
+    void streamedBatchSendsEveryElement() {
+        String body = "[{\"content\":\"a\"},{\"content\":\"b\"},{\"content\":\"c\"}]";
+        assertEquals(3, service.sendBatch("queue:test", stream(body)));
+    }
+
+    private static InputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.util;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * IdGenerator 节点ID的分配：Redis不可用时不阻止启动，恢复后在后台取得租约
+ */
+class IdGeneratorTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void fallsBackWhenRedisIsDownAndLeasesLater() {
+        StringRedisTemplate redis = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> ops = mock(ValueOperations.class);
+        when(redis.opsForValue()).thenReturn(ops);
+        when(ops.increment("id-node:seq")).thenThrow(new RedisConnectionFailureException("down"));
+
+        IdGenerator generator = generator(redis, -1);
+        generator.init();
+        long id = generator.nextId();
+        assertTrue(id > 0);
+        assertEquals(-1L, IdGenerator.parse("not-an-id"));
+        assertEquals(id, IdGenerator.parse(IdGenerator.toString(id)));
+
+        // Redis恢复后，续期任务取得租约并切换节点ID
+        doReturn(8L).when(ops).increment("id-node:seq");
+        when(ops.setIfAbsent(eq("id-node:7"), anyString(), any(Duration.class))).thenReturn(true);
+        generator.renewLease();
+        assertEquals(7L, nodeId(generator.nextId()));
+    }
+
+    @Test
+    void usesConfiguredNodeIdWithoutRedis() {
+        IdGenerator generator = generator(mock(StringRedisTemplate.class), 42);
+        generator.init();
+        assertEquals(42L, nodeId(generator.nextId()));
+    }
+
+    private static IdGenerator generator(StringRedisTemplate redis, long configuredNodeId) {
+        IdGenerator generator = new IdGenerator();
+        ReflectionTestUtils.setField(generator, "stringRedisTemplate", redis);
+        ReflectionTestUtils.setField(generator, "configuredNodeId", configuredNodeId);
+        ReflectionTestUtils.setField(generator, "leaseMillis", 60000L);
+        return generator;
+    }
+
+    // 节点ID位于序列号之上的10位
+    private static long nodeId(long id) {
+        return (id >>> 12) & 1023;
+    }
+}